@@ -0,0 +1,112 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs block break analysis off the main thread. Listeners only pack events into per shard ring buffers, and one
+ * analyzer thread per shard drains its buffer and updates the mining sessions. Players are sharded by UUID, so a
+ * player's session is always updated by the same thread and in event order.
+ */
+class AnalysisPipeline {
+
+    private static final int DRAIN_BATCH = 256; //Records drained between idle checks
+    private static final long IDLE_PARK_NANOS = 1000000L; //Analyzer idle wait when its buffer is empty (1ms)
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    private final Shard[] shards;
+
+    private volatile boolean running = false;
+
+    AnalysisPipeline(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main, int threads, int queueDepth)
+    {
+        this.mainClassAccess = main;
+        shards = new Shard[Math.max(1, threads)];
+        for (int i = 0; i < shards.length; i++) shards[i] = new Shard(i, Math.max(16, queueDepth));
+    }
+
+    /**Starts the analyzer threads*/
+    void Start()
+    {
+        running = true;
+        for (Shard shard : shards) shard.thread.start();
+    }
+
+    /**Stops accepting records, lets analyzers finish what's queued and waits for them*/
+    void Shutdown()
+    {
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+            try {
+                shard.thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**Queues a block break for analysis. Never blocks: if the player's shard is full the record is dropped and counted.*/
+    boolean Offer(UUID playerUUID, int x, int y, int z, int materialOrdinal, int biomeClass, long nanoTime)
+    {
+        if (!running) return false;
+        long most = playerUUID.getMostSignificantBits();
+        long least = playerUUID.getLeastSignificantBits();
+        Shard shard = shards[Math.floorMod(Long.hashCode(most ^ least), shards.length)];
+        if (shard.buffer.Offer(most, least, x, y, z, materialOrdinal, biomeClass, nanoTime)) {
+            shard.accepted.increment();
+            return true;
+        }
+        shard.dropped.increment();
+        return false;
+    }
+
+    //Counters (summed over shards):
+    int GetThreads() { return shards.length; }
+    int GetQueueDepth() { return shards[0].buffer.Capacity(); }
+    long GetAccepted() { long total = 0; for (Shard shard : shards) total += shard.accepted.sum(); return total; }
+    long GetDropped() { long total = 0; for (Shard shard : shards) total += shard.dropped.sum(); return total; }
+    long GetAnalyzed() { long total = 0; for (Shard shard : shards) total += shard.analyzed.sum(); return total; }
+
+    private final class Shard implements Runnable, AnalysisRingBuffer.Consumer {
+        final AnalysisRingBuffer buffer;
+        final Thread thread;
+        final LongAdder accepted = new LongAdder(); //Records queued
+        final LongAdder dropped = new LongAdder(); //Records rejected because the buffer was full
+        final LongAdder analyzed = new LongAdder(); //Records drained and analyzed
+
+        Shard(int index, int queueDepth)
+        {
+            buffer = new AnalysisRingBuffer(queueDepth);
+            thread = new Thread(this, "AntiXrayHeuristics Analyzer #" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run()
+        {
+            while (true) {
+                int drained = buffer.Drain(this, DRAIN_BATCH);
+                if (drained > 0) analyzed.add(drained);
+                else if (running) LockSupport.parkNanos(IDLE_PARK_NANOS);
+                else return; //Stopped and fully drained
+            }
+        }
+
+        @Override
+        public void Accept(long uuidMostSigBits, long uuidLeastSigBits, int x, int y, int z, int materialOrdinal, int biomeClass, long nanoTime)
+        {
+            try {
+                mainClassAccess.AnalyzeBlockBreak(uuidMostSigBits, uuidLeastSigBits, x, y, z, materialOrdinal, biomeClass, nanoTime);
+            } catch (RuntimeException e) { //Never let one bad record kill the analyzer
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue of packed block break records.
+ * Records are laid out as parallel primitive arrays, so queueing never allocates. Each slot carries a sequence number:
+ * a producer claims a position by CAS on the tail, writes the record and publishes it by advancing the slot's
+ * sequence, and the consumer frees the slot for the next lap once it has read it.
+ */
+final class AnalysisRingBuffer {
+
+    /**Receives drained records*/
+    interface Consumer {
+        void Accept(long uuidMostSigBits, long uuidLeastSigBits, int x, int y, int z, int materialOrdinal, int biomeClass, long nanoTime);
+    }
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(); //Next position producers will claim
+    private long head; //Next position the consumer will read (consumer thread only)
+
+    //Record fields:
+    private final long[] uuidMostSigBits;
+    private final long[] uuidLeastSigBits;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] zs;
+    private final int[] materialOrdinals;
+    private final int[] biomeClasses;
+    private final long[] nanoTimes;
+
+    AnalysisRingBuffer(int requestedCapacity)
+    {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1; //Next power of two
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) sequences.set(i, i);
+
+        uuidMostSigBits = new long[capacity];
+        uuidLeastSigBits = new long[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        zs = new int[capacity];
+        materialOrdinals = new int[capacity];
+        biomeClasses = new int[capacity];
+        nanoTimes = new long[capacity];
+    }
+
+    int Capacity() { return mask + 1; }
+
+    /**Queues a record. Safe to call from any thread. Returns false without blocking if the buffer is full.*/
+    boolean Offer(long uuidMost, long uuidLeast, int x, int y, int z, int materialOrdinal, int biomeClass, long nanoTime)
+    {
+        long pos = tail.get();
+        while (true) {
+            int slot = (int) pos & mask;
+            long difference = sequences.get(slot) - pos;
+            if (difference == 0) { //Slot is free for this lap
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    uuidMostSigBits[slot] = uuidMost;
+                    uuidLeastSigBits[slot] = uuidLeast;
+                    xs[slot] = x;
+                    ys[slot] = y;
+                    zs[slot] = z;
+                    materialOrdinals[slot] = materialOrdinal;
+                    biomeClasses[slot] = biomeClass;
+                    nanoTimes[slot] = nanoTime;
+                    sequences.lazySet(slot, pos + 1); //Publish
+                    return true;
+                }
+                pos = tail.get(); //Another producer claimed it
+            }
+            else if (difference < 0) return false; //Consumer hasn't freed the slot yet: full
+            else pos = tail.get(); //Stale tail
+        }
+    }
+
+    /**Hands up to limit published records to the consumer. Must only be called from the single consumer thread.*/
+    int Drain(Consumer consumer, int limit)
+    {
+        int drained = 0;
+        while (drained < limit) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) break; //Nothing published here yet
+            consumer.Accept(uuidMostSigBits[slot], uuidLeastSigBits[slot], xs[slot], ys[slot], zs[slot], materialOrdinals[slot], biomeClasses[slot], nanoTimes[slot]);
+            sequences.lazySet(slot, head + mask + 1); //Free slot for the next lap
+            head++;
+            drained++;
+        }
+        return drained;
+    }
+}
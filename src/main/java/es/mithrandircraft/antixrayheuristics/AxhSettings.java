@@ -0,0 +1,144 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.GameMode;
+import org.bukkit.block.Biome;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable typed snapshot of the config.yml values read while analyzing block breaks.
+ * Built once on enable and swapped as a whole on reload, so the event path only reads final fields
+ * and never touches FileConfiguration.
+ */
+final class AxhSettings {
+
+    //Monitoring:
+    final Set<String> trackWorlds; //Names of the worlds in "TrackWorlds"
+    final int ignoreHigherThanOverworldAltitude;
+    final int ignoreHigherThanNetherAltitude;
+    final Set<GameMode> ignoreGameModes; //Block breaks in these game modes aren't analyzed
+    final int bypassPermissionRefreshTicks; //Period of the "AXH.Ignore" permission cache refresh, 0 or less to only refresh on join/world change
+
+    //Ore weights:
+    final float coalWeight;
+    final float ironWeight;
+    final float goldWeight;
+    final float lapisWeight;
+    final float redstoneWeight;
+    final float emeraldWeight;
+    final float diamondWeight;
+    final float copperWeight;
+    final float quartzWeight;
+    final float netherGoldWeight;
+    final float ancientDebrisWeight;
+
+    //Biome reducers:
+    final float finalEmeraldWeightDivisionReducer;
+    final float finalGoldWeightDivisionReducer;
+    final Set<Biome> goldRichBiomes; //Biomes where FinalGoldWeightDivisionReducer applies
+    final Set<Biome> emeraldRichBiomes; //Biomes where FinalEmeraldWeightDivisionReducer applies
+
+    //Vein heuristics:
+    final int considerAdjacentWithinDistance;
+    final int minimumBlocksMinedToNextVein;
+
+    //Mined blocks trail:
+    final int trailLength; //Sampled coordinates kept per session
+    final int trailSamplingStride; //Every how many mined non-ores coordinates are sampled
+
+    //Mining sessions:
+    final int sessionCacheMaxSize; //Max mining sessions kept, least recently used ones are evicted past it
+    final long sessionIdleTTLMillis; //Sessions without block breaks for this long are dropped (0 or less for no limit)
+    final long sessionQuitGraceMillis; //Sessions of players who quit are kept this long in case they reconnect
+
+    //Precalculated heuristics:
+    final int nonOreStreakDecreaseAmount; //Mined blocks streak decrease per session every MiningSession.DECAY_PERIOD_MILLIS.
+    final int usualEncounterThreshold; //Threshold of mined non-ore blocks after which we consider the player is definetly mining legit
+
+    //Material.ordinal() indexed block rules (null = irrelevant block):
+    final OreRule[] oreRules;
+
+    private AxhSettings(FileConfiguration config)
+    {
+        trackWorlds = Collections.unmodifiableSet(new HashSet<>(config.getStringList("TrackWorlds")));
+        ignoreHigherThanOverworldAltitude = config.getInt("IgnoreHigherThanOverworldAltitude");
+        ignoreHigherThanNetherAltitude = config.getInt("IgnoreHigherThanNetherAltitude");
+        ignoreGameModes = ReadGameModes(config, "IgnoreGameModes", Arrays.asList("CREATIVE", "SPECTATOR"));
+        bypassPermissionRefreshTicks = config.getInt("BypassPermissionRefreshTicks", 100);
+
+        coalWeight = (float) config.getDouble("CoalWeight");
+        ironWeight = (float) config.getDouble("IronWeight");
+        goldWeight = (float) config.getDouble("GoldWeight");
+        lapisWeight = (float) config.getDouble("LapisWeight");
+        redstoneWeight = (float) config.getDouble("RedstoneWeight");
+        emeraldWeight = (float) config.getDouble("EmeraldWeight");
+        diamondWeight = (float) config.getDouble("DiamondWeight");
+        copperWeight = (float) config.getDouble("CopperWeight");
+        quartzWeight = (float) config.getDouble("QuartzWeight");
+        netherGoldWeight = (float) config.getDouble("NetherGoldWeight");
+        ancientDebrisWeight = (float) config.getDouble("AncientDebrisWeight");
+
+        finalEmeraldWeightDivisionReducer = (float) config.getDouble("FinalEmeraldWeightDivisionReducer");
+        finalGoldWeightDivisionReducer = (float) config.getDouble("FinalGoldWeightDivisionReducer");
+        goldRichBiomes = ReadBiomes(config, "GoldRichBiomes", Arrays.asList("BADLANDS", "ERODED_BADLANDS"));
+        emeraldRichBiomes = ReadBiomes(config, "EmeraldRichBiomes", Arrays.asList("WINDSWEPT_HILLS", "WINDSWEPT_GRAVELLY_HILLS",
+                "WINDSWEPT_FOREST", "STONY_PEAKS", "FROZEN_PEAKS", "GROVE", "SNOWY_SLOPES", "JAGGED_PEAKS"));
+
+        considerAdjacentWithinDistance = config.getInt("ConsiderAdjacentWithinDistance");
+        minimumBlocksMinedToNextVein = config.getInt("MinimumBlocksMinedToNextVein");
+
+        trailLength = Math.max(1, config.getInt("TrailLength", 10));
+        trailSamplingStride = Math.max(1, config.getInt("TrailSamplingStride", 4));
+
+        sessionCacheMaxSize = Math.max(1, config.getInt("SessionCacheMaxSize", 10000));
+        sessionIdleTTLMillis = config.getLong("SessionIdleTTLSeconds", 600) * 1000L;
+        sessionQuitGraceMillis = Math.max(0L, config.getLong("SessionQuitGraceSeconds", 60)) * 1000L;
+
+        nonOreStreakDecreaseAmount = -((int) Math.ceil((float) minimumBlocksMinedToNextVein / 4f)); //Calculates bock streak reduction ammount on Runnable
+        usualEncounterThreshold = minimumBlocksMinedToNextVein * 4; //Calculates how many blocks till we should find diamond and/or emerald average
+
+        oreRules = OreRule.BuildTable(config, this);
+    }
+
+    private static Set<GameMode> ReadGameModes(FileConfiguration config, String path, List<String> defaults)
+    {
+        Set<GameMode> gameModes = EnumSet.noneOf(GameMode.class);
+        for (String name : config.isList(path) ? config.getStringList(path) : defaults) {
+            try {
+                gameModes.add(GameMode.valueOf(name.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                System.out.println("[AntiXrayHeuristics] Unknown game mode in " + path + ": " + name);
+            }
+        }
+        return Collections.unmodifiableSet(gameModes);
+    }
+
+    private static Set<Biome> ReadBiomes(FileConfiguration config, String path, List<String> defaults)
+    {
+        Set<Biome> biomes = EnumSet.noneOf(Biome.class);
+        for (String name : config.isList(path) ? config.getStringList(path) : defaults) {
+            try {
+                biomes.add(Biome.valueOf(name.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                System.out.println("[AntiXrayHeuristics] Unknown biome in " + path + ": " + name);
+            }
+        }
+        return Collections.unmodifiableSet(biomes);
+    }
+
+    /**Reads every hot path value from the given configuration into a new immutable snapshot*/
+    static AxhSettings FromConfig(FileConfiguration config)
+    {
+        return new AxhSettings(config);
+    }
+}
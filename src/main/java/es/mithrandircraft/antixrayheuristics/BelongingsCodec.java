@@ -0,0 +1,231 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stored form of confiscated belongings. A version byte, then a deflated stream holding the slot count, a bitmap of
+ * occupied slots, and each occupied slot's ItemStack as its ConfigurationSerializable map, written with typed binary
+ * values. Anything not starting with the version byte is a legacy Base64 Java serialization string, which stays readable.
+ */
+final class BelongingsCodec {
+
+    static final byte VERSION = 1;
+
+    //Value tags:
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte SHORT = 6;
+    private static final byte BYTE = 7;
+    private static final byte BOOLEAN = 8;
+    private static final byte LIST = 9;
+    private static final byte MAP = 10;
+    private static final byte SERIALIZABLE = 11; //Alias + map, rebuilt through ConfigurationSerialization
+    private static final byte OBJECT = 12; //Anything else, through Bukkit's object stream
+
+    private BelongingsCodec() {}
+
+    static byte[] Encode(ItemStack[] items) throws IllegalStateException
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            bytes.write(VERSION);
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+                out.writeShort(items.length);
+                byte[] present = new byte[(items.length + 7) / 8]; //Empty slots take a single bit
+                for (int i = 0; i < items.length; i++) {
+                    if (IsPresent(items[i])) present[i / 8] |= 1 << (i % 8);
+                }
+                out.write(present);
+                for (ItemStack item : items) {
+                    if (IsPresent(item)) WriteValue(out, item);
+                }
+            }
+            return bytes.toByteArray();
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to save item stacks.", e);
+        }
+    }
+
+    static ItemStack[] Decode(byte[] data) throws IOException
+    {
+        if (data == null) return null; //Null data case returns null
+        if (IsLegacy(data)) return BukkitSerializer.itemStackArrayFromBase64(new String(data, StandardCharsets.US_ASCII));
+
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data, 1, data.length - 1)))) {
+            ItemStack[] items = new ItemStack[in.readUnsignedShort()];
+            byte[] present = new byte[(items.length + 7) / 8];
+            in.readFully(present);
+            for (int i = 0; i < items.length; i++) {
+                if ((present[i / 8] & (1 << (i % 8))) != 0) items[i] = (ItemStack) ReadValue(in);
+            }
+            return items;
+        } catch (ClassCastException e) {
+            throw new IOException("Unexpected value in place of an item stack.", e);
+        }
+    }
+
+    /**True for belongings still in the legacy Base64 Java serialization form*/
+    static boolean IsLegacy(byte[] data) { return data.length == 0 || data[0] != VERSION; }
+
+    /**Content address of stored belongings: hex SHA-256 of their bytes, equal belongings are stored once*/
+    static String Hash(byte[] data)
+    {
+        try {
+            return Hex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable.", e); //Every Java platform has it
+        }
+    }
+
+    static String Hex(byte[] digest)
+    {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+
+    //------------------ TEXT FORM (inline JSON belongings) ------------------
+
+    /**Belongings from a JSON string written by older versions: Base64, or legacy Base64 text kept as it was*/
+    static byte[] FromText(String text)
+    {
+        if (text == null) return null;
+        //The first Base64 quantum tells them apart, legacy text decodes to a Java serialization stream header instead:
+        if (text.length() < 4 || IsLegacy(Base64.getDecoder().decode(text.substring(0, 4)))) return text.getBytes(StandardCharsets.US_ASCII);
+        return Base64.getDecoder().decode(text);
+    }
+
+    //------------------ VALUES ------------------
+
+    private static boolean IsPresent(ItemStack item) { return item != null && item.getType() != Material.AIR; }
+
+    private static void WriteValue(DataOutputStream out, Object value) throws IOException
+    {
+        if (value == null) out.writeByte(NULL);
+        else if (value instanceof String) { out.writeByte(STRING); WriteString(out, (String) value); }
+        else if (value instanceof Integer) { out.writeByte(INT); out.writeInt((Integer) value); }
+        else if (value instanceof Long) { out.writeByte(LONG); out.writeLong((Long) value); }
+        else if (value instanceof Double) { out.writeByte(DOUBLE); out.writeDouble((Double) value); }
+        else if (value instanceof Float) { out.writeByte(FLOAT); out.writeFloat((Float) value); }
+        else if (value instanceof Short) { out.writeByte(SHORT); out.writeShort((Short) value); }
+        else if (value instanceof Byte) { out.writeByte(BYTE); out.writeByte((Byte) value); }
+        else if (value instanceof Boolean) { out.writeByte(BOOLEAN); out.writeBoolean((Boolean) value); }
+        else if (value instanceof Collection) { //Sets (item flags...) are read back as lists, like YAML does
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(collection.size());
+            for (Object element : collection) WriteValue(out, element);
+        }
+        else if (value instanceof Map) {
+            out.writeByte(MAP);
+            WriteMap(out, (Map<?, ?>) value);
+        }
+        else if (value instanceof ConfigurationSerializable) {
+            out.writeByte(SERIALIZABLE);
+            WriteString(out, ConfigurationSerialization.getAlias(((ConfigurationSerializable) value).getClass()));
+            WriteMap(out, ((ConfigurationSerializable) value).serialize());
+        }
+        else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (BukkitObjectOutputStream objectOut = new BukkitObjectOutputStream(bytes)) {
+                objectOut.writeObject(value);
+            }
+            out.writeByte(OBJECT);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+
+    private static Object ReadValue(DataInputStream in) throws IOException
+    {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL: return null;
+            case STRING: return ReadString(in);
+            case INT: return in.readInt();
+            case LONG: return in.readLong();
+            case DOUBLE: return in.readDouble();
+            case FLOAT: return in.readFloat();
+            case SHORT: return in.readShort();
+            case BYTE: return in.readByte();
+            case BOOLEAN: return in.readBoolean();
+            case LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) list.add(ReadValue(in));
+                return list;
+            }
+            case MAP: return ReadMap(in);
+            case SERIALIZABLE: {
+                String alias = ReadString(in);
+                Map<String, Object> map = ReadMap(in);
+                map.put(ConfigurationSerialization.SERIALIZED_TYPE_KEY, alias);
+                ConfigurationSerializable deserialized = ConfigurationSerialization.deserializeObject(map);
+                if (deserialized == null) throw new IOException("Unable to deserialize " + alias + ".");
+                return deserialized;
+            }
+            case OBJECT: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                try (BukkitObjectInputStream objectIn = new BukkitObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return objectIn.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException("Unable to decode class type.", e);
+                }
+            }
+            default: throw new IOException("Unknown value tag " + tag + ".");
+        }
+    }
+
+    private static void WriteMap(DataOutputStream out, Map<?, ?> map) throws IOException
+    {
+        out.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            WriteString(out, String.valueOf(entry.getKey()));
+            WriteValue(out, entry.getValue());
+        }
+    }
+
+    private static Map<String, Object> ReadMap(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        Map<String, Object> map = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) map.put(ReadString(in), ReadValue(in));
+        return map;
+    }
+
+    private static void WriteString(DataOutputStream out, String value) throws IOException //Length prefixed UTF-8 (writeUTF caps at 64KB, too little for item NBT)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String ReadString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
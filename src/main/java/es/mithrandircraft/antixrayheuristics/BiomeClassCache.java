@@ -0,0 +1,122 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+
+import java.util.Set;
+
+/**
+ * Per world chunk to biome class (OreRule.BIOME_* bits) cache. Chunks are classified lazily the first time an ore that
+ * cares about biomes is mined in them, and forgotten when they unload. Open addressing over primitive arrays, so a
+ * lookup is a single probe sequence without boxing. Main thread only.
+ */
+final class BiomeClassCache {
+
+    private static final byte FILLED = (byte) 0x80; //Marks a used slot (biome classes may be 0)
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Set<Biome> goldRichBiomes;
+    private final Set<Biome> emeraldRichBiomes;
+
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private byte[] values = new byte[INITIAL_CAPACITY]; //0 = empty slot
+    private int size = 0;
+
+    BiomeClassCache(Set<Biome> goldRichBiomes, Set<Biome> emeraldRichBiomes)
+    {
+        this.goldRichBiomes = goldRichBiomes;
+        this.emeraldRichBiomes = emeraldRichBiomes;
+    }
+
+    /**Returns the OreRule.BIOME_* bits of the chunk holding the given block, classifying the chunk if it isn't cached*/
+    int Get(World world, int x, int y, int z)
+    {
+        final long key = ChunkKey(x >> 4, z >> 4);
+        final int mask = keys.length - 1;
+        int slot = Slot(key, mask);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) return values[slot] & ~FILLED;
+            slot = (slot + 1) & mask;
+        }
+
+        //Miss: sample the mined block and the centers of the chunk's four quarters at its altitude, so chunks on a biome
+        //border count as rich if any part of them is:
+        final int baseX = x & ~15, baseZ = z & ~15;
+        int biomeClass = Classify(world.getBiome(x, y, z));
+        biomeClass |= Classify(world.getBiome(baseX + 4, y, baseZ + 4));
+        biomeClass |= Classify(world.getBiome(baseX + 12, y, baseZ + 4));
+        biomeClass |= Classify(world.getBiome(baseX + 4, y, baseZ + 12));
+        biomeClass |= Classify(world.getBiome(baseX + 12, y, baseZ + 12));
+
+        keys[slot] = key;
+        values[slot] = (byte) (biomeClass | FILLED);
+        if (++size * 2 > keys.length) Grow(); //Keep load under 1/2 for short probe sequences
+        return biomeClass;
+    }
+
+    /**Forgets an unloaded chunk*/
+    void Remove(int chunkX, int chunkZ)
+    {
+        final long key = ChunkKey(chunkX, chunkZ);
+        final int mask = keys.length - 1;
+        int slot = Slot(key, mask);
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                //Backward shift deletion, so probe sequences stay intact without tombstones:
+                int hole = slot;
+                int next = (slot + 1) & mask;
+                while (values[next] != 0) {
+                    int home = Slot(keys[next], mask);
+                    if (((next - home) & mask) >= ((next - hole) & mask)) { //Entry may move back to the hole
+                        keys[hole] = keys[next];
+                        values[hole] = values[next];
+                        hole = next;
+                    }
+                    next = (next + 1) & mask;
+                }
+                values[hole] = 0;
+                size--;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int Classify(Biome biome)
+    {
+        int biomeClass = OreRule.BIOME_NONE;
+        if (goldRichBiomes.contains(biome)) biomeClass |= OreRule.BIOME_GOLD_RICH;
+        if (emeraldRichBiomes.contains(biome)) biomeClass |= OreRule.BIOME_EMERALD_RICH;
+        return biomeClass;
+    }
+
+    private void Grow()
+    {
+        final long[] oldKeys = keys;
+        final byte[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new byte[oldValues.length << 1];
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == 0) continue;
+            int slot = Slot(oldKeys[i], mask);
+            while (values[slot] != 0) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static long ChunkKey(int chunkX, int chunkZ)
+    {
+        return (long) chunkX << 32 | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    private static int Slot(long key, int mask)
+    {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask; //Fibonacci hashing spreads neighbouring chunks
+    }
+}
@@ -0,0 +1,58 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+/**
+ * Online players holding "AXH.Ignore", so block breaks don't resolve permissions each time. Computed on join and world
+ * change, and refreshed on a timer since Bukkit has no permission change event. Main thread only.
+ */
+class BypassCache {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    private final HashSet<UUID> bypassing = new HashSet<>();
+
+    private BukkitTask refreshTask = null;
+
+    BypassCache(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
+
+    boolean IsBypassing(Player player) { return bypassing.contains(player.getUniqueId()); }
+
+    /**Recomputes a player's bypass state*/
+    void Refresh(Player player)
+    {
+        if (player.hasPermission("AXH.Ignore")) bypassing.add(player.getUniqueId());
+        else bypassing.remove(player.getUniqueId());
+    }
+
+    /**Forgets a player who left*/
+    void Forget(Player player)
+    {
+        bypassing.remove(player.getUniqueId());
+    }
+
+    /**Recomputes every online player's bypass state*/
+    void RefreshAll()
+    {
+        bypassing.clear();
+        for (Player player : Bukkit.getOnlinePlayers()) Refresh(player);
+    }
+
+    /**Refreshes everyone now and (re)schedules the refresh timer with the current settings*/
+    void Restart()
+    {
+        if (refreshTask != null) refreshTask.cancel();
+        RefreshAll();
+        final int ticks = mainClassAccess.GetSettings().bypassPermissionRefreshTicks;
+        refreshTask = ticks > 0 ? Bukkit.getScheduler().runTaskTimer(mainClassAccess, this::RefreshAll, ticks, ticks) : null;
+    }
+}
@@ -0,0 +1,203 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache in front of any XrayerRepository. Belongings and handle locations of recently looked at xrayers
+ * are kept in bounded LRU maps, and so are recently read pages of base data and counts, by query, until the next write
+ * invalidates them. Only immutable or copied values are handed out, so callers can't alter cached data.
+ */
+final class CachingXrayerRepository implements XrayerRepository {
+
+    private static final int MAX_CACHED_PAGES = 16;
+
+    private final XrayerRepository delegate;
+
+    private final LruMap<byte[]> belongings;
+    private final LruMap<String> handleLocations;
+    private final LruMap<List<Xrayer>> basePages = new LruMap<>(MAX_CACHED_PAGES); //By query, cursor and limit
+    private final LruMap<Integer> counts = new LruMap<>(MAX_CACHED_PAGES); //By query
+    private long generation = 0; //Bumped by every write, so reads that raced with one don't cache stale data
+
+    CachingXrayerRepository(XrayerRepository delegate, int maxEntries)
+    {
+        this.delegate = delegate;
+        belongings = new LruMap<>(Math.max(1, maxEntries));
+        handleLocations = new LruMap<>(Math.max(1, maxEntries));
+    }
+
+    @Override
+    public void Open() { delegate.Open(); }
+
+    @Override
+    public void Close() { delegate.Close(); }
+
+    @Override
+    public int[] StoreHandles(List<String> uuids, int[] handles, List<Supplier<Xrayer>> newXrayers)
+    {
+        final int[] handled = delegate.StoreHandles(uuids, handles, newXrayers);
+        synchronized (this) { InvalidateBaseData(); }
+        return handled;
+    }
+
+    @Override
+    public List<Xrayer> GetBasePage(XrayerQuery query, Xrayer after, int limit)
+    {
+        final String key = query + "|" + (after != null ? after.UUID : null) + "|" + limit; //A UUID appears once per listing, so it identifies the cursor
+        final long readGeneration;
+        synchronized (this) {
+            final List<Xrayer> cached = basePages.get(key);
+            if (cached != null) return Copy(cached);
+            readGeneration = generation;
+        }
+        final List<Xrayer> read = delegate.GetBasePage(query, after, limit);
+        if (read == null) return null;
+        synchronized (this) {
+            if (generation == readGeneration) basePages.put(key, Copy(read));
+        }
+        return read;
+    }
+
+    @Override
+    public int Count(XrayerQuery query)
+    {
+        final String key = query.toString();
+        final long readGeneration;
+        synchronized (this) {
+            final Integer cached = counts.get(key);
+            if (cached != null) return cached;
+            readGeneration = generation;
+        }
+        final int read = delegate.Count(query);
+        synchronized (this) {
+            if (read >= 0 && generation == readGeneration) counts.put(key, read);
+        }
+        return read;
+    }
+
+    @Override
+    public boolean UpdatePlayer(String uuid, String name, long lastSeen)
+    {
+        final boolean updated = delegate.UpdatePlayer(uuid, name, lastSeen);
+        if (updated) synchronized (this) { InvalidateBaseData(); }
+        return updated;
+    }
+
+    @Override
+    public List<Xrayer> GetFullPage(String afterUUID, int limit) { return delegate.GetFullPage(afterUUID, limit); } //Not cached, only migrations walk full records
+
+    @Override
+    public boolean PutAll(List<Xrayer> xrayers)
+    {
+        final boolean stored = delegate.PutAll(xrayers);
+        synchronized (this) {
+            InvalidateBaseData();
+            belongings.clear();
+            handleLocations.clear();
+        }
+        return stored;
+    }
+
+    @Override
+    public void Sync() { delegate.Sync(); }
+
+    @Override
+    public byte[] GetBelongings(String uuid)
+    {
+        final byte[] read = ReadThrough(belongings, uuid, delegate::GetBelongings);
+        return read != null ? read.clone() : null;
+    }
+
+    @Override
+    public String GetHandleLocation(String uuid) { return ReadThrough(handleLocations, uuid, delegate::GetHandleLocation); }
+
+    @Override
+    public boolean ReplaceBelongings(String uuid, byte[] expected, byte[] replacement)
+    {
+        final boolean replaced = delegate.ReplaceBelongings(uuid, expected, replacement);
+        synchronized (this) {
+            generation++;
+            belongings.remove(uuid);
+        }
+        return replaced;
+    }
+
+    @Override
+    public void Delete(String uuid)
+    {
+        delegate.Delete(uuid);
+        synchronized (this) {
+            InvalidateBaseData();
+            belongings.remove(uuid);
+            handleLocations.remove(uuid);
+        }
+    }
+
+    @Override
+    public void DeleteAll()
+    {
+        delegate.DeleteAll();
+        synchronized (this) {
+            InvalidateBaseData();
+            belongings.clear();
+            handleLocations.clear();
+        }
+    }
+
+    private void InvalidateBaseData() //Lock held
+    {
+        generation++;
+        basePages.clear();
+        counts.clear();
+    }
+
+    private <V> V ReadThrough(LruMap<V> cache, String uuid, Function<String, V> read)
+    {
+        final long readGeneration;
+        synchronized (this) {
+            final V cached = cache.get(uuid);
+            if (cached != null) return cached;
+            readGeneration = generation;
+        }
+        final V value = read.apply(uuid);
+        if (value == null) return null; //Misses and failures aren't cached
+        synchronized (this) {
+            if (generation == readGeneration) cache.put(uuid, value);
+        }
+        return value;
+    }
+
+    private static List<Xrayer> Copy(List<Xrayer> xrayers) //Xrayer is mutable, never hand out the cached instances
+    {
+        List<Xrayer> copy = new ArrayList<>(xrayers.size());
+        for (Xrayer xrayer : xrayers) {
+            Xrayer base = new Xrayer(xrayer.UUID, xrayer.Handled, xrayer.FirstHandleTime, xrayer.HandleLocation, null);
+            base.Name = xrayer.Name;
+            base.LastSeen = xrayer.LastSeen;
+            copy.add(base);
+        }
+        return copy;
+    }
+
+    private static final class LruMap<V> extends LinkedHashMap<String, V> {
+        private final int maxEntries;
+
+        LruMap(int maxEntries)
+        {
+            super(16, 0.75f, true); //Access order
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest) { return size() > maxEntries; }
+    }
+}
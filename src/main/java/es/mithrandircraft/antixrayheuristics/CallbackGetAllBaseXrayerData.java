@@ -1,5 +0,0 @@
-package es.mithrandircraft.antixrayheuristics;
-
-interface CallbackGetAllBaseXrayerData {
-    void onQueryDone();
-}
\ No newline at end of file
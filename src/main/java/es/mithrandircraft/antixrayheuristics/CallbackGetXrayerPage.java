@@ -0,0 +1,7 @@
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.List;
+
+interface CallbackGetXrayerPage {
+    void onQueryDone(List<Xrayer> xrayers, int total);
+}
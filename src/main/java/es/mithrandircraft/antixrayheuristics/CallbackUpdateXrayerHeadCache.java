@@ -1,5 +0,0 @@
-package es.mithrandircraft.antixrayheuristics;
-
-public interface CallbackUpdateXrayerHeadCache {
-    void onFetchUpdateDone();
-}
@@ -0,0 +1,34 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.List;
+
+class CommandARGMigrate {
+
+    private static final List<String> STORAGE_TYPES = Arrays.asList("JSON", "MYSQL", "EMBEDDED");
+
+    public static void M(CommandSender sender, String from, String to, AntiXrayHeuristics mainClass) {
+        if (sender instanceof Player && !sender.hasPermission("AXH.Commands.Migrate")) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("NoPermissionForCommand")));
+            return;
+        }
+
+        String prefix = ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " ";
+
+        from = from.toUpperCase();
+        to = to.toUpperCase();
+        if (!STORAGE_TYPES.contains(from) || !STORAGE_TYPES.contains(to) || from.equals(to)) {
+            sender.sendMessage(prefix + ChatColor.RED + "Usage: /axh migrate <from> <to>, with two different storage types out of " + String.join(", ", STORAGE_TYPES) + ".");
+            return;
+        }
+        if (!StorageMigration.Start(mainClass, sender, from, to)) sender.sendMessage(prefix + ChatColor.RED + "A migration is running already.");
+    }
+}
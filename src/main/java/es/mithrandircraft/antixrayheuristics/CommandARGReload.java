@@ -16,14 +16,18 @@ class CommandARGReload {
             if (player.hasPermission("AXH.Commands.Reload")) {
                 //Do reload
                 mainClass.reloadConfig(); //Reload main config
+                mainClass.ReloadSettings(); //Swap hot path config snapshot
                 LocaleManager.reload(); //Reload locale config
+                mainClass.vault.ForgetRenderedEntries(); //Render vault entries with the reloaded locale
                 WeightsCard.reload(); //Reload weights card config
                 player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("Reloaded")));
             } else player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("NoPermissionForCommand")));
         } else { //Is console
                 //Do reload
                 mainClass.reloadConfig();
+                mainClass.ReloadSettings();
                 LocaleManager.reload();
+                mainClass.vault.ForgetRenderedEntries();
                 WeightsCard.reload();
                 System.out.println(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("Reloaded")));
         }
@@ -4,6 +4,7 @@
 
 package es.mithrandircraft.antixrayheuristics;
 
+import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -14,9 +15,9 @@ class CommandARGResetSuspicion {
         {
             Player player = (Player) sender;
             if(player.hasPermission("AXH.Commands.ResetSuspicion")) {
-                MiningSession tempMS = mainClass.sessions.get(player.getName());
+                MiningSession tempMS = mainClass.sessions.Peek(player.getUniqueId());
                 if (tempMS != null){
-                    mainClass.sessions.remove(player.getName());
+                    mainClass.sessions.Remove(player.getUniqueId());
                     player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("OwnSuspicionNullified")));
                 }
                 else player.sendMessage(ChatColor.translateAlternateColorCodes('&',LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("NoOwnSuspicionReset")));
@@ -31,17 +32,19 @@ class CommandARGResetSuspicion {
         if (sender instanceof Player) { //Is player
             Player player = (Player) sender;
             if (player.hasPermission("AXH.Commands.ResetSuspicion")) {
-                MiningSession tempMS = mainClass.sessions.get(arg);
+                Player target = Bukkit.getPlayerExact(arg); //Sessions only exist for online players
+                MiningSession tempMS = target != null ? mainClass.sessions.Peek(target.getUniqueId()) : null;
                 if (tempMS != null) {
-                    mainClass.sessions.remove(arg);
+                    mainClass.sessions.Remove(target.getUniqueId());
                     player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + PlaceholderManager.SubstitutePlayerNameAndColorCodePlaceholders(LocaleManager.get().getString("PlayerSuspicionNullified"), arg));
                 } else
                     player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + PlaceholderManager.SubstitutePlayerNameAndColorCodePlaceholders(LocaleManager.get().getString("NoPlayerSuspicionReset"), arg));
             } else player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("NoPermissionForCommand")));
         } else {
-            MiningSession tempMS = mainClass.sessions.get(arg);
+            Player target = Bukkit.getPlayerExact(arg);
+            MiningSession tempMS = target != null ? mainClass.sessions.Peek(target.getUniqueId()) : null;
             if (tempMS != null) {
-                mainClass.sessions.remove(arg);
+                mainClass.sessions.Remove(target.getUniqueId());
                 System.out.println(ChatColor.translateAlternateColorCodes('&',LocaleManager.get().getString("MessagesPrefix")) + " " + PlaceholderManager.SubstitutePlayerNameAndColorCodePlaceholders(LocaleManager.get().getString("PlayerSuspicionNullified"), arg));
             } else //Is console
                 System.out.println(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + PlaceholderManager.SubstitutePlayerNameAndColorCodePlaceholders(LocaleManager.get().getString("NoPlayerSuspicionReset"), arg));
@@ -0,0 +1,52 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+class CommandARGStats {
+    public static void ST(CommandSender sender, AntiXrayHeuristics mainClass) {
+        if (sender instanceof Player && !sender.hasPermission("AXH.Commands.Stats")) {
+            sender.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("NoPermissionForCommand")));
+            return;
+        }
+
+        String prefix = ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " ";
+
+        //Mining sessions:
+        SessionStore sessions = mainClass.sessions;
+        sender.sendMessage(prefix + ChatColor.AQUA + "Sessions: " + ChatColor.YELLOW + sessions.Size() + ChatColor.AQUA + "/" + ChatColor.YELLOW + mainClass.GetSettings().sessionCacheMaxSize
+                + ChatColor.AQUA + ", hits: " + ChatColor.YELLOW + sessions.GetHits() + ChatColor.AQUA + ", misses: " + ChatColor.YELLOW + sessions.GetMisses());
+        sender.sendMessage(prefix + ChatColor.AQUA + "Session evictions: " + ChatColor.YELLOW + sessions.GetEvictions() + ChatColor.AQUA + " (full), "
+                + ChatColor.YELLOW + mainClass.expiryWheel.GetIdleExpirations() + ChatColor.AQUA + " (idle), " + ChatColor.YELLOW + mainClass.expiryWheel.GetQuitExpirations() + ChatColor.AQUA + " (quit)");
+
+        //Analysis pipeline:
+        AnalysisPipeline pipeline = mainClass.pipeline;
+        if (pipeline == null) sender.sendMessage(prefix + ChatColor.AQUA + "Analysis: synchronous (main thread)");
+        else {
+            long accepted = pipeline.GetAccepted();
+            long analyzed = pipeline.GetAnalyzed();
+            sender.sendMessage(prefix + ChatColor.AQUA + "Analysis: " + ChatColor.YELLOW + pipeline.GetThreads() + ChatColor.AQUA + " threads, queue depth " + ChatColor.YELLOW + pipeline.GetQueueDepth());
+            sender.sendMessage(prefix + ChatColor.AQUA + "Queued: " + ChatColor.YELLOW + accepted + ChatColor.AQUA + ", analyzed: " + ChatColor.YELLOW + analyzed
+                    + ChatColor.AQUA + ", backlog: " + ChatColor.YELLOW + (accepted - analyzed) + ChatColor.AQUA + ", dropped (overflow): " + ChatColor.YELLOW + pipeline.GetDropped());
+        }
+
+        //Storage writer:
+        StorageWriter writer = mainClass.mm.GetWriter();
+        if (writer != null) {
+            long accepted = writer.GetAccepted();
+            long written = writer.GetWritten();
+            sender.sendMessage(prefix + ChatColor.AQUA + "Storage: " + ChatColor.YELLOW + written + ChatColor.AQUA + "/" + ChatColor.YELLOW + accepted + ChatColor.AQUA + " detections stored in "
+                    + ChatColor.YELLOW + writer.GetBatches() + ChatColor.AQUA + " writes, queue size " + ChatColor.YELLOW + writer.GetQueueSize() + ChatColor.AQUA + "/" + ChatColor.YELLOW + writer.GetQueueCapacity() + ChatColor.AQUA + ", dropped (overflow): " + ChatColor.YELLOW + writer.GetDropped());
+        }
+
+        //Head textures:
+        HeadTextureService textures = mainClass.heads.GetTextures();
+        sender.sendMessage(prefix + ChatColor.AQUA + "Heads: " + ChatColor.YELLOW + textures.GetCachedCount() + ChatColor.AQUA + " cached, fetched: " + ChatColor.YELLOW + textures.GetFetched()
+                + ChatColor.AQUA + ", failed: " + ChatColor.YELLOW + textures.GetFailed() + ChatColor.AQUA + ", coalesced: " + ChatColor.YELLOW + textures.GetCoalesced() + ChatColor.AQUA + ", in flight: " + ChatColor.YELLOW + textures.GetInFlight());
+    }
+}
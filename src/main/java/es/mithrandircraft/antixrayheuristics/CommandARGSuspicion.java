@@ -4,15 +4,23 @@
 
 package es.mithrandircraft.antixrayheuristics;
 
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
 class CommandARGSuspicion {
+    private static float GetDecayedSuspicion(MiningSession session, AntiXrayHeuristics mainClass) {
+        synchronized (session) { //Sessions are also updated by analyzer threads
+            mainClass.DecaySession(session); //Suspicion decreases lazily, bring it up to date before showing it
+            return session.GetSuspicionLevel();
+        }
+    }
+
     public static void S(CommandSender sender, AntiXrayHeuristics mainClass) {//Non-parametrized
         if (sender instanceof Player) { //Is player
             Player player = (Player) sender;
-            MiningSession tempMS = mainClass.sessions.get(player.getName());
-            if (tempMS != null) player.sendMessage("Your suspicion level: " + tempMS.GetSuspicionLevel());
+            MiningSession tempMS = mainClass.sessions.Peek(player.getUniqueId());
+            if (tempMS != null) player.sendMessage("Your suspicion level: " + GetDecayedSuspicion(tempMS, mainClass));
             else player.sendMessage("You are not suspicious of Xray usage. No suspicion level available.");
         }
         else System.out.println(LocaleManager.get().getString("PlayerOnlyCommand")); //Is console
@@ -21,15 +29,17 @@ class CommandARGSuspicion {
     {
         if (sender instanceof Player) { //Is player
             Player player = (Player) sender;
-            MiningSession tempMS = mainClass.sessions.get(arg);
+            Player target = Bukkit.getPlayerExact(arg); //Sessions only exist for online players
+            MiningSession tempMS = target != null ? mainClass.sessions.Peek(target.getUniqueId()) : null;
             if (tempMS != null)
-                player.sendMessage(arg + "'s suspicion level: " + tempMS.GetSuspicionLevel());
+                player.sendMessage(arg + "'s suspicion level: " + GetDecayedSuspicion(tempMS, mainClass));
             else
                 player.sendMessage(arg + " Is not suspicious of Xray usage. No suspicion level available.");
         } else { //Is console
-            MiningSession tempMS = mainClass.sessions.get(arg);
+            Player target = Bukkit.getPlayerExact(arg);
+            MiningSession tempMS = target != null ? mainClass.sessions.Peek(target.getUniqueId()) : null;
             if (tempMS != null)
-                System.out.println(arg + "'s suspicion level: " + tempMS.GetSuspicionLevel());
+                System.out.println(arg + "'s suspicion level: " + GetDecayedSuspicion(tempMS, mainClass));
             else
                 System.out.println(arg + " Is not suspicious of Xray usage. No suspicion level available.");
         }
@@ -15,7 +15,32 @@ class CommandARGVault {
         {
             Player player = (Player) sender;
             if (player.hasPermission("AXH.Commands.Vault")) {
-                mainClass.vault.UpdateXrayerInfoLists(player, 0); //Update all of the xrayer's uuid's in vault's arraylist (arguments imply also opening vault for player on page)
+                mainClass.vault.UpdateXrayerInfoLists(player, 0, XrayerQuery.ALL); //Update all of the xrayer's uuid's in vault's arraylist (arguments imply also opening vault for player on page)
+
+            } else player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("NoPermissionForCommand")));
+        } else { //Is console
+            System.out.println(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("PlayerOnlyCommand")));
+        }
+    }
+
+    /**
+     * Opens the vault listing xrayers whose name starts with filter ("*" for everyone), optionally sorted
+     *
+     * @param sort Sort argument (storage, handled, firstdetected or lastseen), null to keep storage order
+     */
+    static void V(CommandSender sender, String filter, String sort, AntiXrayHeuristics mainClass)
+    {
+        if (sender instanceof Player) //Is player
+        {
+            Player player = (Player) sender;
+            if (player.hasPermission("AXH.Commands.Vault")) {
+                XrayerQuery.Sort order = sort != null ? XrayerQuery.Sort.FromArgument(sort) : XrayerQuery.Sort.STORAGE;
+                if (order == null || (!filter.equals("*") && !XrayerQuery.IsValidNamePrefix(filter))) {
+                    player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("InvalidCMDArg")));
+                    player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("VaultSearchHelp")));
+                    return;
+                }
+                mainClass.vault.UpdateXrayerInfoLists(player, 0, new XrayerQuery(order, filter.equals("*") ? null : filter));
 
             } else player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("NoPermissionForCommand")));
         } else { //Is console
@@ -26,18 +26,26 @@ class CommandAXH implements CommandExecutor {
             else if (args[0].equalsIgnoreCase("vault") || args[0].equalsIgnoreCase("v")) CommandARGVault.V(sender, mainClassAccess);
             else if (args[0].equalsIgnoreCase("reload") || args[0].equalsIgnoreCase("r")) CommandARGReload.R(sender, mainClassAccess);
             else if (args[0].equalsIgnoreCase("resetsuspicion") || args[0].equalsIgnoreCase("rs")) CommandARGResetSuspicion.RS(sender, mainClassAccess);
+            else if (args[0].equalsIgnoreCase("stats") || args[0].equalsIgnoreCase("st")) CommandARGStats.ST(sender, mainClassAccess);
             //else if (args[0].equalsIgnoreCase("suspicion") || args[0].equalsIgnoreCase("s")) CommandARGSuspicion.S(sender, mainClassAccess);
             else sender.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("InvalidCMDArg")));
         }
         else if(args.length == 2)
         {
             if (args[0].equalsIgnoreCase("xrayer") || args[0].equalsIgnoreCase("x")) CommandARGXrayer.X(sender, args[1]);
+            else if (args[0].equalsIgnoreCase("vault") || args[0].equalsIgnoreCase("v")) CommandARGVault.V(sender, args[1], null, mainClassAccess);
             else if (args[0].equalsIgnoreCase("absolve") || args[0].equalsIgnoreCase("a")) CommandARGAbsolvePlayer.A(sender, args[1], mainClassAccess);
             else if (args[0].equalsIgnoreCase("purge") || args[0].equalsIgnoreCase("p")) CommandARGPurgePlayer.P(sender, args[1], mainClassAccess);
             else if (args[0].equalsIgnoreCase("resetsuspicion") || args[0].equalsIgnoreCase("rs")) CommandARGResetSuspicion.RS(sender, args[1], mainClassAccess);
             //else if (args[0].equalsIgnoreCase("suspicion") || args[0].equalsIgnoreCase("s")) CommandARGSuspicion.S(sender, args[1], mainClassAccess);
             else sender.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("InvalidCMDArg")));
         }
+        else if(args.length == 3)
+        {
+            if (args[0].equalsIgnoreCase("migrate") || args[0].equalsIgnoreCase("m")) CommandARGMigrate.M(sender, args[1], args[2], mainClassAccess);
+            else if (args[0].equalsIgnoreCase("vault") || args[0].equalsIgnoreCase("v")) CommandARGVault.V(sender, args[1], args[2], mainClassAccess);
+            else sender.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("InvalidCMDArg")));
+        }
         else //Show help
         {
             sender.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("InvalidCMDArg")));
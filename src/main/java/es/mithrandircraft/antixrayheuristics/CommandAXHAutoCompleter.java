@@ -21,9 +21,32 @@ class CommandAXHAutoCompleter implements TabCompleter {
             firstArguments.add("xrayer");
             firstArguments.add("absolve");
             firstArguments.add("purge");
+            firstArguments.add("stats");
+            firstArguments.add("migrate");
 
             return firstArguments;
         }
+        else if((args.length == 2 || args.length == 3) && (args[0].equalsIgnoreCase("migrate") || args[0].equalsIgnoreCase("m")))
+        {
+            List<String> storageTypes = new ArrayList<>();
+
+            storageTypes.add("JSON");
+            storageTypes.add("MYSQL");
+            storageTypes.add("EMBEDDED");
+
+            return storageTypes;
+        }
+        else if(args.length == 3 && (args[0].equalsIgnoreCase("vault") || args[0].equalsIgnoreCase("v")))
+        {
+            List<String> sorts = new ArrayList<>();
+
+            sorts.add("handled");
+            sorts.add("firstdetected");
+            sorts.add("lastseen");
+            sorts.add("storage");
+
+            return sorts;
+        }
 
         return null;
     }
@@ -22,15 +22,7 @@ class DelayedInventoryCloseExecution implements Runnable {
             //Clear loaded xrayer information in vault from RAM if no one is still viewing the GUI:
             if(mainClassAccess.vault.CheckIfNoViewers())
             {
-                mainClassAccess.vault.ClearXrayerInfoLists(false);
-            }
-            if(mainClassAccess.getConfig().getString("StorageMethod").equals("JSON"))
-            {
-                //Flush stored xrayer data from MemoryManager in RAM if no one is still viewing the GUI:
-                if(mainClassAccess.vault.CheckIfNoViewers())
-                {
-                    mainClassAccess.mm.JSONFlushLoadedXrayerData();
-                }
+                mainClassAccess.vault.ClearXrayerInfoLists();
             }
         }
     }
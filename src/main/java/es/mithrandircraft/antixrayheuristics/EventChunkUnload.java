@@ -0,0 +1,28 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Chunk;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+class EventChunkUnload implements Listener {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    public EventChunkUnload(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void ChunkUnloadEvent(ChunkUnloadEvent e) //Evicts the unloaded chunk's cached biome class
+    {
+        WorldProfile profile = mainClassAccess.worldProfiles.Get(e.getWorld());
+        if (profile.tracked) {
+            Chunk chunk = e.getChunk();
+            profile.biomeClasses.Remove(chunk.getX(), chunk.getZ());
+        }
+    }
+}
@@ -53,6 +53,20 @@ class EventClick implements Listener {
 
                             break;
                         }
+                        case 46:
+                        {
+                            //Sort vault by the next criteria:
+                            mainClassAccess.vault.CycleSort((Player) e.getView().getPlayer());
+
+                            break;
+                        }
+                        case 52:
+                        {
+                            //Clear name search (or show how to search):
+                            mainClassAccess.vault.ClearSearch((Player) e.getView().getPlayer());
+
+                            break;
+                        }
                         case 53:
                         {
                             //Show next vault row:
@@ -9,10 +9,15 @@ import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryDragEvent;
 
 class EventItemDrag implements Listener {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    public EventItemDrag(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
+
     @EventHandler
-    public void dragEv(InventoryDragEvent e) //Stops items from being placed in top Xrayer Vault inventory by dragging them
+    public void dragEv(InventoryDragEvent e) //Stops items from being placed in top Xrayer Vault inventory by dragging them (vault pages are shared by all their viewers)
     {
-        if(e.getView().getTitle().equals("Xrayer Vault"))
+        if(e.getView().getTitle().contains(mainClassAccess.vault.GetGUITitle()))
         {
             e.setCancelled(true);
         }
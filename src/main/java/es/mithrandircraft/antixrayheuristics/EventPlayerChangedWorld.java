@@ -4,7 +4,6 @@
 
 package es.mithrandircraft.antixrayheuristics;
 
-import es.mithrandircraft.antixrayheuristics.MiningSession;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerChangedWorldEvent;
@@ -18,11 +17,14 @@ class EventPlayerChangedWorld implements Listener {
     @EventHandler
     public void PlayerChangedWorldEvent(PlayerChangedWorldEvent e) //This event cleans the mining trail, and previous mined ore data, when switching worlds (avoids errors)
     {
-        MiningSession session = mainClassAccess.sessions.get(e.getPlayer().getName());
+        mainClassAccess.bypass.Refresh(e.getPlayer()); //Permissions may be per world
+
+        MiningSession session = mainClassAccess.sessions.Peek(e.getPlayer().getUniqueId());
         if (session != null) { //Checking the player who switched worlds actually has a mining session.
-            session.SetLastMinedOreData(null, null);
-            session.ResetBlocksTrailArray();
-            session.ResetBlockCoordsStoreCounter();
+            synchronized (session) { //Sessions are also updated by analyzer threads
+                session.ResetLastMinedOreData();
+                session.ResetTrail();
+            }
         }
     }
 }
@@ -0,0 +1,24 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+
+class EventPlayerJoin implements Listener {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    public EventPlayerJoin(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void PlayerJoinEvent(PlayerJoinEvent e) //Caches the joining player's bypass permission (permission plugins have loaded it by now), and keeps their session if they reconnected in time
+    {
+        mainClassAccess.bypass.Refresh(e.getPlayer());
+        mainClassAccess.expiryWheel.OnJoin(e.getPlayer().getUniqueId().getMostSignificantBits(), e.getPlayer().getUniqueId().getLeastSignificantBits());
+    }
+}
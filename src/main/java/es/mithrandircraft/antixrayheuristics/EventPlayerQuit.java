@@ -0,0 +1,31 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+class EventPlayerQuit implements Listener {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    public EventPlayerQuit(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void PlayerQuitEvent(PlayerQuitEvent e) //Drops the leaving player's cached bypass permission, and their session after the quit grace period. Records their name and last seen time if registered as xrayer.
+    {
+        mainClassAccess.bypass.Forget(e.getPlayer());
+        mainClassAccess.expiryWheel.OnQuit(e.getPlayer().getUniqueId().getMostSignificantBits(), e.getPlayer().getUniqueId().getLeastSignificantBits());
+
+        final String uuid = e.getPlayer().getUniqueId().toString();
+        if (!mainClassAccess.mm.MayBeRegistered(uuid)) return; //Storage is only written for xrayers
+        final String name = e.getPlayer().getName();
+        final long lastSeen = System.currentTimeMillis();
+        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.UpdateXrayerPlayer(uuid, name, lastSeen));
+    }
+}
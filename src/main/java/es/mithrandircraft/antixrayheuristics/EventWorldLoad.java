@@ -0,0 +1,22 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.WorldLoadEvent;
+
+class EventWorldLoad implements Listener {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    public EventWorldLoad(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
+
+    @EventHandler
+    public void WorldLoadEvent(WorldLoadEvent e) //Resolves the tracking profile of worlds loaded after startup (multiverse plugins etc.)
+    {
+        mainClassAccess.worldProfiles.Load(e.getWorld());
+    }
+}
@@ -1,98 +1,85 @@
 package es.mithrandircraft.antixrayheuristics;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.plugin.IllegalPluginAccessException;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class HeadManager {
 
-    /**
-     *Gets the head of a player for, will only work on 1.13 or higher
-     *This method should be called asynchronously
-     *
-     * @param playerUUID The player's UUID for the head we want
-     * @param callback Optionally add a callback for post-async task
-     * @return ItemStack with the player's skull as material, null if version is
-     */
-    static ItemStack GetPlayerHead(UUID playerUUID, CallbackAddXrayerHeadToCache callback)
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    private static final int MAX_BUILT_HEADS = 1024;
+
+    private final HeadTextureService textures;
+
+    //Heads built from each texture value, so a player's head is the same instance until its texture changes (main thread only):
+    private final LinkedHashMap<String, ItemStack> builtHeads = new LinkedHashMap<String, ItemStack>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ItemStack> eldest) { return size() > MAX_BUILT_HEADS; }
+    };
+
+    HeadManager(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main)
     {
-        String playerName = Bukkit.getOfflinePlayer(playerUUID).getName();
+        this.mainClassAccess = main;
+        textures = new HeadTextureService(new File(main.getDataFolder(), "heads.cache"),
+                main.getConfig().getString("HeadsSessionServerURL", "https://sessionserver.mojang.com"),
+                main.getConfig().getLong("HeadsCacheTTLHours", 72) * 3600000L,
+                main.getConfig().getInt("HeadsFetchTimeoutMillis", 5000),
+                main.getConfig().getInt("HeadsFetchThreads", 4),
+                main.getConfig().getInt("HeadsFetchQueueSize", 1024),
+                main.getConfig().getDouble("HeadsRequestsPerSecond", 1.0),
+                main.getConfig().getInt("HeadsRequestBurst", 10));
+    }
 
-        String value;
-        value = HeadManager.GetHeadValue(playerName);
-        if (value == null) value = "";
+    /**Loads cached head textures*/
+    void Open() { textures.Open(); }
 
-        ItemStack playerHead = HeadManager.GetHead(value);
+    /**Stops fetching head textures*/
+    void Close() { textures.Close(); }
 
-        if(callback != null) callback.onFetchUpdateDone(playerHead);
+    /**Head texture cache and fetch statistics*/
+    HeadTextureService GetTextures() { return textures; }
 
-        return playerHead;
+    /**
+     *Gets the head of a player, will only work on 1.13 or higher. Returns right away: with the cached texture if there
+     *is one, else with a placeholder (plain) head. Textures not cached, or cached for longer than the configured TTL,
+     *are fetched in the background, and the callback gets the new head on the main thread once fetched.
+     *This method should be called from the main thread
+     *
+     * @param playerUUID The player's UUID for the head we want
+     * @param callback Optionally add a callback for heads fetched after returning
+     * @return ItemStack with the player's skull as material. Shared, copy it before modifying it.
+     */
+    ItemStack GetPlayerHead(UUID playerUUID, CallbackAddXrayerHeadToCache callback)
+    {
+        HeadTextureService.CachedTexture cached = textures.GetCached(playerUUID);
+        if (cached == null || textures.IsExpired(cached)) {
+            final String shown = cached != null ? cached.value : ""; //Placeholder shown meanwhile
+            textures.Fetch(playerUUID).thenAccept(value -> {
+                if (callback == null || value.equals(shown)) return; //Same texture as shown already
+                try {
+                    Bukkit.getScheduler().runTask(mainClassAccess, () -> callback.onFetchUpdateDone(BuiltHead(value)));
+                } catch (IllegalPluginAccessException ignored) { } //Disabling
+            });
+        }
+        return BuiltHead(cached != null ? cached.value : "");
     }
 
-    /**Gets a head by UUID*/
+    private ItemStack BuiltHead(String value) { return builtHeads.computeIfAbsent(value, HeadManager::GetHead); }
+
+    /**Gets a head by texture value, or a placeholder (plain) head for an empty value*/
     static ItemStack GetHead(String value) {
         ItemStack skull = new ItemStack(Material.PLAYER_HEAD);
+        if (value.isEmpty()) return skull;
         UUID hashAsId = new UUID(value.hashCode(), value.hashCode());
         return Bukkit.getUnsafe().modifyItemStack(skull,
                 "{SkullOwner:{Id:\"" + hashAsId + "\",Properties:{textures:[{Value:\"" + value + "\"}]}}}"
         );
     }
-
-    /**Gets a head's internal code (long string with alphanumbers ending in =, which represents the head), as a string*/
-    static String GetHeadValue(String name){
-        try
-        {
-            String result = GetURLContent("https://api.mojang.com/users/profiles/minecraft/" + name);
-            Gson g = new Gson();
-            JsonObject obj = g.fromJson(result, JsonObject.class);
-            String uid = obj.get("id").toString().replace("\"","");
-            String signature = GetURLContent("https://sessionserver.mojang.com/session/minecraft/profile/" + uid);
-            obj = g.fromJson(signature, JsonObject.class);
-            String value = obj.getAsJsonArray("properties").get(0).getAsJsonObject().get("value").getAsString();
-            String decoded = new String(Base64.getDecoder().decode(value));
-            obj = g.fromJson(decoded,JsonObject.class);
-            String skinURL = obj.getAsJsonObject("textures").getAsJsonObject("SKIN").get("url").getAsString();
-            byte[] skinByte = ("{\"textures\":{\"SKIN\":{\"url\":\"" + skinURL + "\"}}}").getBytes();
-            return new String(Base64.getEncoder().encode(skinByte));
-        }
-        catch (Exception ignored) { }
-
-        return null;
-    }
-
-    /**Gets the contents of a web URL as a string*/
-    private static String GetURLContent(String urlStr) {
-        URL url;
-        BufferedReader in = null;
-        StringBuilder sb = new StringBuilder();
-        try
-        {
-            url = new URL(urlStr);
-            in = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8) );
-            String str;
-            while((str = in.readLine()) != null) {
-                sb.append( str );
-            }
-        }
-        catch (Exception ignored) { }
-        finally
-        {
-            try
-            {
-                if(in!=null) in.close();
-            }
-            catch(IOException ignored) { }
-        }
-        return sb.toString();
-    }
 }
@@ -0,0 +1,279 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Player head textures by UUID, fetched straight from a session server's profile endpoint and cached on disk
+ * ("heads.cache", one "uuid, fetch time, texture" line per fetch, the last line of a UUID wins). Fetches run on a
+ * bounded pool, paced by a token bucket, and concurrent requests for the same UUID share a single fetch. Has no Bukkit
+ * dependencies, so it can run against any HTTP server serving that endpoint.
+ */
+final class HeadTextureService {
+
+    private static final String PROFILE_PATH = "/session/minecraft/profile/";
+
+    private final File cacheFile;
+    private final String sessionServerURL; //Without trailing slash
+    private final long ttlMillis;
+    private final int timeoutMillis;
+    private final TokenBucket bucket;
+    private final ThreadPoolExecutor executor;
+
+    private final ConcurrentHashMap<UUID, CachedTexture> textures = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>(); //Coalesces requests for the same UUID
+    private BufferedWriter cacheWriter; //Guarded by this
+
+    private final AtomicBoolean failing = new AtomicBoolean(false); //Logs failures once per streak instead of once per head
+    private final LongAdder fetched = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**A texture value ("" for profiles without a skin) and when it was fetched*/
+    static final class CachedTexture {
+        final String value;
+        final long fetchedAt;
+
+        CachedTexture(String value, long fetchedAt)
+        {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    /**
+     * @param sessionServerURL Base URL of the session server, like "https://sessionserver.mojang.com"
+     * @param ttlMillis How long a cached texture is used before it's fetched again
+     * @param threads Concurrent fetches at most
+     * @param queueSize Fetches waiting for a thread at most, further ones fail right away
+     * @param requestsPerSecond Sustained request rate
+     * @param burst Requests that can go out at once after being idle
+     */
+    HeadTextureService(File cacheFile, String sessionServerURL, long ttlMillis, int timeoutMillis, int threads, int queueSize, double requestsPerSecond, int burst)
+    {
+        this.cacheFile = cacheFile;
+        this.sessionServerURL = sessionServerURL.endsWith("/") ? sessionServerURL.substring(0, sessionServerURL.length() - 1) : sessionServerURL;
+        this.ttlMillis = ttlMillis;
+        this.timeoutMillis = timeoutMillis;
+        bucket = new TokenBucket(requestsPerSecond, burst);
+        executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)), runnable -> {
+            Thread thread = new Thread(runnable, "AntiXrayHeuristics Head Fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true); //No threads while nobody looks at heads
+    }
+
+    //------------------ LIFECYCLE ------------------
+
+    /**Loads the disk cache, rewriting it without superseded lines*/
+    synchronized void Open()
+    {
+        int lines = 0;
+        if (cacheFile.exists()) {
+            try (BufferedReader in = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields.length != 3) continue; //Torn last line of a crash
+                    try {
+                        textures.put(UUID.fromString(fields[0]), new CachedTexture(fields[2], Long.parseLong(fields[1])));
+                        lines++;
+                    } catch (IllegalArgumentException ignored) { }
+                }
+            } catch (IOException e) {
+                System.err.print(e);
+            }
+        }
+        try {
+            if (lines > textures.size()) Rewrite();
+            cacheWriter = Files.newBufferedWriter(cacheFile.toPath(), StandardCharsets.UTF_8, java.nio.file.StandardOpenOption.CREATE, java.nio.file.StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.print(e); //Textures are still fetched, just not remembered across restarts
+        }
+    }
+
+    /**Drops queued fetches, waits briefly for running ones and closes the disk cache*/
+    void Close()
+    {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (cacheWriter == null) return;
+            try {
+                cacheWriter.close();
+            } catch (IOException e) {
+                System.err.print(e);
+            }
+            cacheWriter = null;
+        }
+    }
+
+    private void Rewrite() throws IOException //Lock held. Atomically replaces the cache file with one line per UUID
+    {
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<UUID, CachedTexture> entry : textures.entrySet()) WriteLine(out, entry.getKey(), entry.getValue());
+        }
+        Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void WriteLine(Writer out, UUID uuid, CachedTexture texture) throws IOException
+    {
+        out.write(uuid + "\t" + texture.fetchedAt + "\t" + texture.value + "\n");
+    }
+
+    //------------------ LOOKUPS ------------------
+
+    /**Cached texture of a player, possibly expired, null if never fetched*/
+    CachedTexture GetCached(UUID uuid) { return textures.get(uuid); }
+
+    /**True if a cached texture is old enough to be fetched again*/
+    boolean IsExpired(CachedTexture texture) { return System.currentTimeMillis() - texture.fetchedAt >= ttlMillis; }
+
+    /**
+     * Fetches a player's texture in the background, unless a fetch for it is already running, in which case its result
+     * is shared. Completes with the texture value ("" if the profile has no skin or doesn't exist), or exceptionally.
+     */
+    CompletableFuture<String> Fetch(UUID uuid)
+    {
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(uuid, created);
+        if (running != null) {
+            coalesced.increment();
+            return running;
+        }
+        try {
+            executor.execute(() -> Complete(uuid, created));
+        } catch (RejectedExecutionException e) { //Queue full or closed, asked again on the next request
+            inFlight.remove(uuid, created);
+            failed.increment();
+            created.completeExceptionally(e);
+        }
+        return created;
+    }
+
+    private void Complete(UUID uuid, CompletableFuture<String> result)
+    {
+        try {
+            bucket.Acquire();
+            String value = Request(uuid);
+            CachedTexture texture = new CachedTexture(value, System.currentTimeMillis());
+            textures.put(uuid, texture);
+            Remember(uuid, texture);
+            fetched.increment();
+            failing.set(false);
+            result.complete(value);
+        } catch (IOException | RuntimeException e) {
+            failed.increment();
+            if (failing.compareAndSet(false, true)) System.err.println("[AntiXrayHeuristics] Unable to fetch player head textures (" + e + "), retrying on the next request.");
+            result.completeExceptionally(e);
+        } catch (InterruptedException e) { //Closing
+            result.completeExceptionally(e);
+        } finally {
+            inFlight.remove(uuid, result);
+        }
+    }
+
+    private synchronized void Remember(UUID uuid, CachedTexture texture)
+    {
+        if (cacheWriter == null) return;
+        try {
+            WriteLine(cacheWriter, uuid, texture);
+            cacheWriter.flush(); //Losing a line only costs a fetch, no fsync
+        } catch (IOException e) {
+            System.err.print(e);
+        }
+    }
+
+    /**Requests a player's profile, and reduces its textures to the skin URL (all a head needs)*/
+    private String Request(UUID uuid) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL(sessionServerURL + PROFILE_PATH + uuid.toString().replace("-", "")).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        try {
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NO_CONTENT || status == HttpURLConnection.HTTP_NOT_FOUND) return ""; //Unknown profile (offline mode, dummy xrayers)
+            if (status != HttpURLConnection.HTTP_OK) throw new IOException("HTTP " + status + " from " + sessionServerURL);
+
+            JsonObject profile;
+            try (Reader in = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                profile = JsonParser.parseReader(in).getAsJsonObject();
+            }
+            JsonArray properties = profile.getAsJsonArray("properties");
+            if (properties == null) return "";
+            for (JsonElement property : properties) {
+                if (!"textures".equals(property.getAsJsonObject().get("name").getAsString())) continue;
+                String decoded = new String(Base64.getDecoder().decode(property.getAsJsonObject().get("value").getAsString()), StandardCharsets.UTF_8);
+                JsonObject skin = JsonParser.parseString(decoded).getAsJsonObject().getAsJsonObject("textures").getAsJsonObject("SKIN");
+                if (skin == null) return ""; //Default skin
+                byte[] skinTexture = ("{\"textures\":{\"SKIN\":{\"url\":\"" + skin.get("url").getAsString() + "\"}}}").getBytes(StandardCharsets.UTF_8);
+                return Base64.getEncoder().encodeToString(skinTexture);
+            }
+            return "";
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    //Counters:
+    int GetCachedCount() { return textures.size(); }
+    int GetInFlight() { return inFlight.size(); }
+    long GetFetched() { return fetched.sum(); }
+    long GetFailed() { return failed.sum(); }
+    long GetCoalesced() { return coalesced.sum(); }
+
+    /**Paces requests: tokens refill at a steady rate up to a burst, each request takes one or waits for it*/
+    private static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double perSecond, int burst)
+        {
+            tokensPerNano = Math.max(0.001, perSecond) / 1e9;
+            capacity = Math.max(1, burst);
+            tokens = capacity;
+        }
+
+        void Acquire() throws InterruptedException
+        {
+            long wait = Reserve();
+            if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+        }
+
+        private synchronized long Reserve() //Takes a token, possibly ahead of time, and returns how long to wait for it
+        {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            tokens -= 1;
+            return tokens >= 0 ? 0 : (long) (-tokens / tokensPerNano);
+        }
+    }
+}
@@ -0,0 +1,865 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * JSON xrayer storage engine. The registry is loaded once into an in memory index by UUID. Mutations update the index
+ * and are appended to a journal of JSON lines ("data.journal"), which is fsynced in batches. Once the journal grows
+ * past a configured amount of entries, the index is written to a new "data.json" snapshot in the background (written
+ * aside, fsynced and atomically renamed over the old one) and the journal starts over.
+ *
+ * Journal entries hold absolute values (full inserts, new handled amounts, replaced belongings, deletions), so replaying
+ * an entry that's already part of the snapshot is harmless. That's what makes a crash at any point of a compaction
+ * recoverable.
+ *
+ * Belongings aren't part of the registry: they're content addressed files in "belongings/", named by their hash and
+ * shared by every xrayer carrying the same ones, so the snapshot only holds small records. References are counted in
+ * memory, and files nothing references anymore are deleted once a compaction made that durable. Registries from older
+ * versions, with belongings inline, are moved over while loading.
+ *
+ * The vault's sort orders are served by sorted sets of the indexed xrayers, one per sort and one by name for searches,
+ * kept up to date by every mutation and rebuilt after loading.
+ */
+final class JSONXrayerStore implements XrayerRepository {
+
+    //Indexed xrayer:
+    private static final class Entry {
+        final Xrayer base; //Belongings always null here
+        String belongingsHash; //Belongings file, null if stored without belongings
+        final long firstHandled; //Parsed FirstHandleTime, sort key
+        String nameKey; //Lowercase Name, search key
+
+        Entry(Xrayer base, String belongingsHash)
+        {
+            this.base = base;
+            this.belongingsHash = belongingsHash;
+            firstHandled = Xrayer.ParseTime(base.FirstHandleTime);
+            nameKey = base.Name != null ? base.Name.toLowerCase(Locale.ROOT) : null;
+        }
+
+        void SetPlayer(String name, long lastSeen) //Unsorted while called
+        {
+            base.Name = name;
+            base.LastSeen = lastSeen;
+            nameKey = name != null ? name.toLowerCase(Locale.ROOT) : null;
+        }
+    }
+
+    //Orders of the vault's sorts (descending key, then descending UUID) and of name searches:
+    private static final Comparator<Entry> BY_UUID = Comparator.comparing(entry -> entry.base.UUID);
+    private static final Comparator<Entry> BY_HANDLED = Comparator.<Entry>comparingInt(entry -> entry.base.Handled).thenComparing(BY_UUID).reversed();
+    private static final Comparator<Entry> BY_FIRST_HANDLED = Comparator.<Entry>comparingLong(entry -> entry.firstHandled).thenComparing(BY_UUID).reversed();
+    private static final Comparator<Entry> BY_LAST_SEEN = Comparator.<Entry>comparingLong(entry -> entry.base.LastSeen).thenComparing(BY_UUID).reversed();
+    private static final Comparator<Entry> BY_NAME = Comparator.<Entry, String>comparing(entry -> entry.nameKey).thenComparing(BY_UUID);
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File rotatedJournalFile; //Journal being compacted into a snapshot
+    private final File belongingsFolder;
+    private final long syncIntervalMillis;
+    private final int compactAfterEntries;
+
+    private final TreeMap<String, Entry> index = new TreeMap<>(); //Sorted by UUID for keyset paging
+    private final EnumMap<XrayerQuery.Sort, TreeSet<Entry>> sorted = new EnumMap<>(XrayerQuery.Sort.class); //Index in each key sort's order
+    private final TreeSet<Entry> named = new TreeSet<>(BY_NAME); //Indexed xrayers with a known name, by name
+    private final HashMap<String, Integer> references = new HashMap<>(); //Xrayers referencing each belongings file
+    private HashSet<String> orphaned = new HashSet<>(); //Unreferenced belongings files, deleted after the next compaction
+    private boolean legacyLoaded = false; //Inline belongings were moved out while loading, the snapshot needs a rewrite
+
+    private BufferedWriter journal;
+    private FileChannel journalChannel;
+    private int journalEntries = 0; //Entries in the current journal
+    private boolean unsynced = false; //Journal has entries not yet fsynced
+    private boolean compacting = false;
+
+    private ScheduledExecutorService background; //Journal syncs and compactions
+
+    JSONXrayerStore(File dataFolder, long syncIntervalMillis, int compactAfterEntries)
+    {
+        snapshotFile = new File(dataFolder, "data.json");
+        journalFile = new File(dataFolder, "data.journal");
+        rotatedJournalFile = new File(dataFolder, "data.journal.old");
+        belongingsFolder = new File(dataFolder, "belongings");
+        this.syncIntervalMillis = Math.max(1, syncIntervalMillis);
+        this.compactAfterEntries = Math.max(1, compactAfterEntries);
+        sorted.put(XrayerQuery.Sort.HANDLED, new TreeSet<>(BY_HANDLED));
+        sorted.put(XrayerQuery.Sort.FIRST_DETECTED, new TreeSet<>(BY_FIRST_HANDLED));
+        sorted.put(XrayerQuery.Sort.LAST_SEEN, new TreeSet<>(BY_LAST_SEEN));
+    }
+
+    //------------------ LIFECYCLE ------------------
+
+    /**Loads the snapshot, replays journals left by the last run and starts the background syncing*/
+    @Override
+    public synchronized void Open()
+    {
+        try {
+            Load();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void Load() throws IOException //Lock held
+    {
+        belongingsFolder.mkdirs();
+        index.clear();
+        legacyLoaded = false;
+        LoadSnapshot();
+        Replay(rotatedJournalFile); //Left over by an interrupted compaction
+        Replay(journalFile);
+        CountReferences();
+        for (TreeSet<Entry> entries : sorted.values()) entries.clear();
+        named.clear();
+        for (Entry entry : index.values()) Sort(entry);
+
+        OpenJournal(true);
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AntiXrayHeuristics JSON Store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        background.scheduleWithFixedDelay(this::SyncJournal, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+
+        //Fold what was replayed (or moved out of older registries) into a fresh snapshot:
+        if (journalEntries > 0 || rotatedJournalFile.exists() || legacyLoaded) ScheduleCompaction();
+    }
+
+    /**Stops background work, then compacts everything into the snapshot*/
+    @Override
+    public void Close()
+    {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = background;
+            background = null;
+        }
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+            synchronized (this) {
+                while (compacting) wait(); //A compaction still writing the snapshot, never write it alongside
+                compacting = true;
+            }
+            Compact();
+        } catch (InterruptedException e) { //Final compaction skipped, the journal is replayed on next start
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) { CloseJournal(); }
+    }
+
+    //------------------ QUERIES ------------------
+
+    /**Copies of a page of stored xrayers' base data (no belongings), as the query lists them*/
+    @Override
+    public synchronized List<Xrayer> GetBasePage(XrayerQuery query, Xrayer after, int limit)
+    {
+        List<Xrayer> xrayers = new ArrayList<>(Math.min(limit, index.size()));
+        for (Entry entry : Listed(query, after)) {
+            if (xrayers.size() >= limit) break;
+            xrayers.add(Copy(entry.base));
+        }
+        return xrayers;
+    }
+
+    @Override
+    public synchronized int Count(XrayerQuery query) { return query.namePrefix != null ? Named(query.namePrefix).size() : index.size(); }
+
+    private Iterable<Entry> Listed(XrayerQuery query, Xrayer after) //Lock held. Entries the query lists past the cursor, in its order
+    {
+        Comparator<Entry> order = Order(query.sort);
+        if (query.namePrefix != null) { //Few matches, sorted on the spot
+            List<Entry> matches = new ArrayList<>(Named(query.namePrefix));
+            matches.sort(order);
+            if (after == null) return matches;
+            int position = Collections.binarySearch(matches, new Entry(after, null), order);
+            return matches.subList(position >= 0 ? position + 1 : -position - 1, matches.size());
+        }
+        if (query.sort == XrayerQuery.Sort.STORAGE) return (after != null ? index.tailMap(after.UUID, false) : index).values();
+        TreeSet<Entry> entries = sorted.get(query.sort);
+        return after != null ? entries.tailSet(new Entry(after, null), false) : entries;
+    }
+
+    private NavigableSet<Entry> Named(String namePrefix) //Lock held. Entries whose name starts with the lowercase prefix
+    {
+        return named.subSet(NameProbe(namePrefix), true, NameProbe(namePrefix + Character.MAX_VALUE), false);
+    }
+
+    private static Entry NameProbe(String nameKey) //Sorts before every entry named nameKey
+    {
+        Xrayer probe = new Xrayer("", 0, null, null, null);
+        probe.Name = nameKey;
+        return new Entry(probe, null);
+    }
+
+    private static Comparator<Entry> Order(XrayerQuery.Sort sort)
+    {
+        switch (sort) {
+            case HANDLED: return BY_HANDLED;
+            case FIRST_DETECTED: return BY_FIRST_HANDLED;
+            case LAST_SEEN: return BY_LAST_SEEN;
+            default: return BY_UUID;
+        }
+    }
+
+    /**Copies of a page of stored xrayers' complete records, by ascending UUID. Belongings files are read outside the lock.*/
+    @Override
+    public List<Xrayer> GetFullPage(String afterUUID, int limit)
+    {
+        List<Xrayer> xrayers = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        synchronized (this) {
+            Map<String, Entry> tail = afterUUID != null ? index.tailMap(afterUUID, false) : index;
+            for (Entry entry : tail.values()) {
+                if (xrayers.size() >= limit) break;
+                xrayers.add(Copy(entry.base));
+                hashes.add(entry.belongingsHash);
+            }
+        }
+        for (int i = 0; i < xrayers.size(); i++) {
+            if (hashes.get(i) == null) continue;
+            try {
+                xrayers.get(i).Belongings = Files.readAllBytes(BelongingsFile(hashes.get(i)).toPath());
+            } catch (NoSuchFileException e) { //Xrayer deleted meanwhile, its record as it was is still consistent
+            } catch (IOException e) {
+                System.err.print(e);
+                return null;
+            }
+        }
+        return xrayers;
+    }
+
+    /**Reads a stored xrayer's belongings file, null if it has none or isn't stored*/
+    @Override
+    public byte[] GetBelongings(String uuid)
+    {
+        final String hash;
+        synchronized (this) {
+            Entry entry = index.get(uuid);
+            if (entry == null || entry.belongingsHash == null) return null;
+            hash = entry.belongingsHash;
+        }
+        try {
+            return Files.readAllBytes(BelongingsFile(hash).toPath()); //Outside the lock, files only go away after nothing references them
+        } catch (NoSuchFileException e) {
+            return null; //Xrayer deleted meanwhile
+        } catch (IOException e) {
+            System.err.print(e);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean ReplaceBelongings(String uuid, byte[] expected, byte[] replacement)
+    {
+        final String expectedHash = BelongingsCodec.Hash(expected);
+        final String hash = BelongingsCodec.Hash(replacement);
+        try {
+            WriteBelongingsFile(hash, replacement);
+        } catch (IOException e) {
+            System.err.print(e);
+            return false;
+        }
+        synchronized (this) {
+            Entry entry = index.get(uuid);
+            if (entry == null || !expectedHash.equals(entry.belongingsHash)) {
+                if (!references.containsKey(hash)) orphaned.add(hash);
+                return false;
+            }
+            if (!Reference(hash, replacement)) return false;
+            Unreference(entry.belongingsHash);
+            entry.belongingsHash = hash;
+            Append(writer -> {
+                writer.name("op").value("belongings");
+                writer.name("UUID").value(uuid);
+                writer.name("BelongingsHash").value(hash);
+            });
+            return true;
+        }
+    }
+
+    @Override
+    public synchronized String GetHandleLocation(String uuid)
+    {
+        Entry entry = index.get(uuid);
+        return entry != null ? entry.base.HandleLocation : null;
+    }
+
+    //------------------ MUTATIONS ------------------
+
+    @Override
+    public int[] StoreHandles(List<String> uuids, int[] handles, List<Supplier<Xrayer>> newXrayers)
+    {
+        final int[] timesHandled = AddHandles(uuids, handles); //Registered xrayers first, in a single pass
+
+        for (int i = 0; i < uuids.size(); i++) {
+            if (timesHandled[i] >= 0) continue;
+            //Built, hashed and written outside the lock, it may serialize a whole inventory:
+            final Xrayer xrayer;
+            try {
+                xrayer = newXrayers.get(i).get();
+            } catch (RuntimeException e) {
+                System.err.println("[AntiXrayHeuristics] Unable to store xrayer " + uuids.get(i) + ": " + e);
+                continue; //Stays -1, the others are stored
+            }
+            String hash = null;
+            if (xrayer.Belongings != null) {
+                hash = BelongingsCodec.Hash(xrayer.Belongings);
+                try {
+                    WriteBelongingsFile(hash, xrayer.Belongings);
+                } catch (IOException e) {
+                    System.err.print(e);
+                    continue; //Stays -1
+                }
+            }
+            timesHandled[i] = StoreHandle(xrayer, hash, handles[i]);
+        }
+        return timesHandled;
+    }
+
+    private synchronized int[] AddHandles(List<String> uuids, int[] handles)
+    {
+        int[] timesHandled = new int[uuids.size()];
+        for (int i = 0; i < uuids.size(); i++) timesHandled[i] = AddHandle(uuids.get(i), handles[i]);
+        return timesHandled;
+    }
+
+    /**
+     * Adds handles to an already stored xrayer.
+     *
+     * @return Times the xrayer has been handled, these handles included, or -1 if the xrayer isn't stored
+     */
+    private synchronized int AddHandle(String uuid, int handles)
+    {
+        Entry entry = index.get(uuid);
+        if (entry == null) return -1;
+        Unsort(entry);
+        entry.base.Handled += handles;
+        Sort(entry);
+        Append(writer -> {
+            writer.name("op").value("handled");
+            writer.name("UUID").value(uuid);
+            writer.name("Handled").value(entry.base.Handled);
+        });
+        return entry.base.Handled;
+    }
+
+    /**
+     * Inserts a new xrayer, or adds the handles to it if it got stored meanwhile.
+     *
+     * @return Times the xrayer has been handled, these handles included, or -1 on failure
+     */
+    private synchronized int StoreHandle(Xrayer newXrayer, String hash, int handles)
+    {
+        final int handled = AddHandle(newXrayer.UUID, handles);
+        if (handled >= 0) {
+            if (hash != null && !references.containsKey(hash)) orphaned.add(hash); //Written for nothing
+            return handled;
+        }
+        if (hash != null && !Reference(hash, newXrayer.Belongings)) return -1;
+        Xrayer base = Copy(newXrayer);
+        base.Handled = handles;
+        Entry entry = new Entry(base, hash);
+        index.put(newXrayer.UUID, entry);
+        Sort(entry);
+        Append(writer -> {
+            writer.name("op").value("put");
+            WriteFields(writer, entry);
+        });
+        return handles;
+    }
+
+    /**Replaces the xrayers' records with the given ones. Belongings files are written before taking the lock.*/
+    @Override
+    public boolean PutAll(List<Xrayer> xrayers)
+    {
+        String[] hashes = new String[xrayers.size()];
+        for (int i = 0; i < xrayers.size(); i++) {
+            if (xrayers.get(i).Belongings == null) continue;
+            hashes[i] = BelongingsCodec.Hash(xrayers.get(i).Belongings);
+            try {
+                WriteBelongingsFile(hashes[i], xrayers.get(i).Belongings);
+            } catch (IOException e) {
+                System.err.print(e);
+                return false;
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < xrayers.size(); i++) {
+                final Xrayer xrayer = xrayers.get(i);
+                if (hashes[i] != null && !Reference(hashes[i], xrayer.Belongings)) return false;
+                final Entry entry = new Entry(Copy(xrayer), hashes[i]);
+                Entry replaced = index.put(xrayer.UUID, entry);
+                if (replaced != null) {
+                    Unreference(replaced.belongingsHash);
+                    Unsort(replaced);
+                }
+                Sort(entry);
+                Append(writer -> {
+                    writer.name("op").value("put");
+                    WriteFields(writer, entry);
+                });
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void Sync() { SyncJournal(); }
+
+    @Override
+    public synchronized boolean UpdatePlayer(String uuid, String name, long lastSeen)
+    {
+        Entry entry = index.get(uuid);
+        if (entry == null) return false;
+        Unsort(entry);
+        entry.SetPlayer(name, lastSeen);
+        Sort(entry);
+        Append(writer -> {
+            writer.name("op").value("player");
+            writer.name("UUID").value(uuid);
+            writer.name("Name").value(name);
+            writer.name("LastSeen").value(lastSeen);
+        });
+        return true;
+    }
+
+    @Override
+    public synchronized void Delete(String uuid)
+    {
+        Entry entry = index.remove(uuid);
+        if (entry == null) return;
+        Unsort(entry);
+        Unreference(entry.belongingsHash);
+        Append(writer -> {
+            writer.name("op").value("delete");
+            writer.name("UUID").value(uuid);
+        });
+    }
+
+    @Override
+    public synchronized void DeleteAll()
+    {
+        index.clear();
+        for (TreeSet<Entry> entries : sorted.values()) entries.clear();
+        named.clear();
+        orphaned.addAll(references.keySet());
+        references.clear();
+        Append(writer -> writer.name("op").value("clear"));
+    }
+
+    private void Sort(Entry entry) //Lock held. Adds an indexed entry to the sorted sets
+    {
+        for (TreeSet<Entry> entries : sorted.values()) entries.add(entry);
+        if (entry.nameKey != null) named.add(entry);
+    }
+
+    private void Unsort(Entry entry) //Lock held. Removes an entry from the sorted sets, before changing its sort keys
+    {
+        for (TreeSet<Entry> entries : sorted.values()) entries.remove(entry);
+        if (entry.nameKey != null) named.remove(entry);
+    }
+
+    //------------------ BELONGINGS FILES ------------------
+
+    private File BelongingsFile(String hash) { return new File(belongingsFolder, hash); }
+
+    //Fsynced and atomically renamed into place, unless already there. Not called under the lock, so each write goes through
+    //its own temp file: writers of the same contents (same hash) can't truncate each other's, and whichever renames last wins.
+    private void WriteBelongingsFile(String hash, byte[] belongings) throws IOException
+    {
+        File file = BelongingsFile(hash);
+        if (file.exists()) return;
+        Path tmp = Files.createTempFile(belongingsFolder.toPath(), hash, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(belongings);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            if (!file.exists()) throw e; //Else another writer put the same contents in place
+        }
+    }
+
+    /**Adds a reference to a belongings file, writing it again if a compaction deleted it since it was written*/
+    private boolean Reference(String hash, byte[] belongings) //Lock held
+    {
+        if (!references.containsKey(hash)) {
+            try {
+                WriteBelongingsFile(hash, belongings);
+            } catch (IOException e) {
+                System.err.print(e);
+                return false;
+            }
+        }
+        references.merge(hash, 1, Integer::sum);
+        return true;
+    }
+
+    private void Unreference(String hash) //Lock held
+    {
+        if (hash == null) return;
+        if (references.merge(hash, -1, Integer::sum) <= 0) {
+            references.remove(hash);
+            orphaned.add(hash);
+        }
+    }
+
+    private void CountReferences() throws IOException //Lock held. Rebuilds reference counts and deletes files nothing references (left by crashes)
+    {
+        references.clear();
+        orphaned.clear();
+        for (Entry entry : index.values()) {
+            if (entry.belongingsHash != null) references.merge(entry.belongingsHash, 1, Integer::sum);
+        }
+        File[] files = belongingsFolder.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (!references.containsKey(file.getName())) Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    //------------------ SNAPSHOT ------------------
+
+    private void LoadSnapshot() throws IOException //Streams the snapshot's JSON array into the index, one record at a time
+    {
+        if (!snapshotFile.exists()) return;
+        try (JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8), 65536))) {
+            if (reader.peek() == JsonToken.END_DOCUMENT) return;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Entry entry = ReadRecord(reader);
+                index.put(entry.base.UUID, entry);
+            }
+            reader.endArray();
+        }
+    }
+
+    private Entry ReadRecord(JsonReader reader) throws IOException //Reads one xrayer object, moving inline belongings to their file
+    {
+        Xrayer xrayer = new Xrayer(null, 0, null, null, null);
+        String hash = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "UUID": xrayer.UUID = reader.nextString(); break;
+                case "Handled": xrayer.Handled = reader.nextInt(); break;
+                case "FirstHandleTime": xrayer.FirstHandleTime = reader.nextString(); break;
+                case "HandleLocation": xrayer.HandleLocation = reader.nextString(); break;
+                case "Name": xrayer.Name = reader.nextString(); break;
+                case "LastSeen": xrayer.LastSeen = reader.nextLong(); break;
+                case "BelongingsHash": hash = reader.nextString(); break;
+                case "Belongings": hash = MoveInlineBelongings(reader.nextString()); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        return new Entry(xrayer, hash);
+    }
+
+    private String MoveInlineBelongings(String text) throws IOException //Older registries stored belongings inside each record
+    {
+        byte[] belongings = BelongingsCodec.FromText(text);
+        String hash = BelongingsCodec.Hash(belongings);
+        WriteBelongingsFile(hash, belongings);
+        legacyLoaded = true;
+        return hash;
+    }
+
+    private static void WriteFields(JsonWriter writer, Entry entry) throws IOException
+    {
+        writer.name("UUID").value(entry.base.UUID);
+        writer.name("Handled").value(entry.base.Handled);
+        writer.name("FirstHandleTime").value(entry.base.FirstHandleTime);
+        writer.name("HandleLocation").value(entry.base.HandleLocation);
+        if (entry.base.Name != null) writer.name("Name").value(entry.base.Name);
+        writer.name("LastSeen").value(entry.base.LastSeen);
+        if (entry.belongingsHash != null) writer.name("BelongingsHash").value(entry.belongingsHash);
+    }
+
+    /**Writes a line snapshot ("[", one record per line, "]") to a buffered channel*/
+    private static final class SnapshotWriter implements Closeable {
+        private final FileChannel channel;
+        private final Writer out;
+        private final JsonWriter writer;
+        private boolean first = true;
+
+        SnapshotWriter(File file) throws IOException
+        {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), 65536);
+            writer = new JsonWriter(out);
+            out.write("[");
+        }
+
+        void Write(Entry entry) throws IOException
+        {
+            out.write(first ? "\n" : ",\n");
+            first = false;
+            writer.beginObject();
+            WriteFields(writer, entry);
+            writer.endObject();
+            writer.flush(); //Into the buffer, records are separated by hand
+        }
+
+        @Override
+        public void close() throws IOException //Fsyncs too
+        {
+            try {
+                out.write("\n]\n");
+                out.flush();
+                channel.force(true);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    //------------------ JOURNAL ------------------
+
+    private interface JournalEntryWriter {
+        void Write(JsonWriter writer) throws IOException;
+    }
+
+    private void Append(JournalEntryWriter fields) //Lock held
+    {
+        try {
+            JsonWriter writer = new JsonWriter(journal);
+            writer.beginObject();
+            fields.Write(writer);
+            writer.endObject();
+            writer.flush(); //Into the journal's buffer, not to disk
+            journal.write('\n');
+            unsynced = true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (++journalEntries >= compactAfterEntries) ScheduleCompaction();
+    }
+
+    private void SyncJournal() //Batched fsync of whatever was appended since the last one
+    {
+        FileChannel channel;
+        synchronized (this) {
+            if (!unsynced) return;
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            unsynced = false;
+            channel = journalChannel;
+        }
+        try {
+            channel.force(false);
+        } catch (IOException e) { //Closed by a rotation meanwhile, which synced it anyway
+        }
+    }
+
+    private void Replay(File file) throws IOException
+    {
+        if (!file.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                try {
+                    ReplayEntry(new JsonReader(new StringReader(line)));
+                } catch (IOException | RuntimeException e) { //Torn last line from a crash, everything before it is valid
+                    System.out.println("[AntiXrayHeuristics] Ignoring unreadable journal entry in " + file.getName());
+                }
+            }
+        }
+    }
+
+    private void ReplayEntry(JsonReader reader) throws IOException
+    {
+        String op = null;
+        Xrayer xrayer = new Xrayer(null, 0, null, null, null);
+        String hash = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "op": op = reader.nextString(); break;
+                case "UUID": xrayer.UUID = reader.nextString(); break;
+                case "Handled": xrayer.Handled = reader.nextInt(); break;
+                case "FirstHandleTime": xrayer.FirstHandleTime = reader.nextString(); break;
+                case "HandleLocation": xrayer.HandleLocation = reader.nextString(); break;
+                case "Name": xrayer.Name = reader.nextString(); break;
+                case "LastSeen": xrayer.LastSeen = reader.nextLong(); break;
+                case "BelongingsHash": hash = reader.nextString(); break;
+                case "Belongings": hash = MoveInlineBelongings(reader.nextString()); break; //Journal from an older version
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        if (op == null) return;
+        switch (op) {
+            case "put":
+                index.put(xrayer.UUID, new Entry(xrayer, hash));
+                break;
+            case "handled": {
+                Entry entry = index.get(xrayer.UUID);
+                if (entry != null) entry.base.Handled = xrayer.Handled;
+                break;
+            }
+            case "belongings": {
+                Entry entry = index.get(xrayer.UUID);
+                if (entry != null) entry.belongingsHash = hash;
+                break;
+            }
+            case "player": {
+                Entry entry = index.get(xrayer.UUID);
+                if (entry != null) entry.SetPlayer(xrayer.Name, xrayer.LastSeen);
+                break;
+            }
+            case "delete":
+                index.remove(xrayer.UUID);
+                break;
+            case "clear":
+                index.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void OpenJournal(boolean append) throws IOException //Lock held
+    {
+        journalChannel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        journal = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(journalChannel), StandardCharsets.UTF_8));
+        journalEntries = 0;
+        if (append) try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            while (reader.readLine() != null) journalEntries++;
+        }
+    }
+
+    private void CloseJournal() //Lock held
+    {
+        try {
+            journal.flush();
+            journalChannel.force(false);
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        unsynced = false;
+    }
+
+    //------------------ COMPACTION ------------------
+
+    private void ScheduleCompaction() //Lock held
+    {
+        if (compacting || background == null) return;
+        compacting = true;
+        background.execute(this::Compact);
+    }
+
+    /**Writes the index to a new snapshot, drops the journal entries it includes and the belongings files it made unreferenced*/
+    private void Compact()
+    {
+        final List<Entry> entries;
+        final HashSet<String> unreferenced;
+        synchronized (this) {
+            //Rotate: entries from now on go to a new journal, the rotated one is only needed until the snapshot is in place
+            if (!rotatedJournalFile.exists()) {
+                CloseJournal();
+                try {
+                    Files.move(journalFile.toPath(), rotatedJournalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    OpenJournal(false);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    try { OpenJournal(true); } catch (IOException e2) { e2.printStackTrace(); }
+                    CompactionDone();
+                    return;
+                }
+            }
+            entries = new ArrayList<>(index.size());
+            for (Entry entry : index.values()) entries.add(new Entry(Copy(entry.base), entry.belongingsHash));
+            unreferenced = orphaned; //Unreferenced as of the snapshot about to be written
+            orphaned = new HashSet<>();
+        }
+
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try {
+            //Crash safe: streamed aside one record at a time, fsynced, then atomically renamed
+            try (SnapshotWriter out = new SnapshotWriter(tmp)) {
+                for (Entry entry : entries) out.Write(entry);
+            }
+            Files.move(tmp.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            synchronized (this) {
+                legacyLoaded = false;
+                for (String hash : unreferenced) {
+                    //Files referenced or dropped again since the rotation wait, the current journal may still need them
+                    if (references.containsKey(hash) || orphaned.contains(hash)) continue;
+                    Files.deleteIfExists(BelongingsFile(hash).toPath());
+                }
+            }
+            Files.deleteIfExists(rotatedJournalFile.toPath());
+        } catch (IOException e) {
+            e.printStackTrace(); //Rotated journal is kept and replayed on next start
+            synchronized (this) { orphaned.addAll(unreferenced); }
+        } finally {
+            synchronized (this) { CompactionDone(); }
+        }
+    }
+
+    private void CompactionDone() //Lock held
+    {
+        compacting = false;
+        notifyAll(); //Close waits for it
+    }
+
+    private static Xrayer Copy(Xrayer xrayer)
+    {
+        Xrayer copy = new Xrayer(xrayer.UUID, xrayer.Handled, xrayer.FirstHandleTime, xrayer.HandleLocation, null);
+        copy.Name = xrayer.Name;
+        copy.LastSeen = xrayer.LastSeen;
+        return copy;
+    }
+}
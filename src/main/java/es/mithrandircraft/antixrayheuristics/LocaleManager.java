@@ -42,7 +42,9 @@ class LocaleManager {
         localeConfiguration.addDefault("AutoHandledPlayer", "&a{PlayerName} &bwas automatically registered and handled for xraying.");
         localeConfiguration.addDefault("PlayerMessageOnXray", "&bYou where punished for Xraying, uninstall Xrays immediately. Resume your gameplay only after you have uninstalled Xrays.");
         localeConfiguration.addDefault("ForcedPageZero", "&bYou where automatically sent to XrayerVault page 0 since one or various players where either purged or absolved.");
+        localeConfiguration.addDefault("InspectedXrayerRemoved", "&bThe xrayer you where inspecting was purged or absolved, you where sent back to its vault page.");
         localeConfiguration.addDefault("VaultRefreshed", "&bShowing latest xrayer information.");
+        localeConfiguration.addDefault("VaultSearchHelp", "&bSearch the vault by name start, optionally sorted: &e/axh vault <name|*> [handled|firstdetected|lastseen|storage]");
         localeConfiguration.addDefault("TeleportToHandleLocation", "&bYou where teleported to the location where the player was handled for xrays.");
 
         //Persistent memory:
@@ -61,6 +63,15 @@ class LocaleManager {
         localeConfiguration.addDefault("PurgePlayerButtonDesc", Arrays.asList("&bThis will delete this specific", "&bxrayer entry and inventory.", "&bEntries are irrecoverable", "&bafter they have been purged."));
         localeConfiguration.addDefault("AbsolvePlayerButtonTitle", "&eAbsolve player");
         localeConfiguration.addDefault("AbsolvePlayerButtonDesc", Arrays.asList("&bAbsolve this player,", "&breturning all confiscated", "&bitems. If they don't fit in", "&bplayer's inventory, they", "&bwill be dropped nearby.", "&bThis also purges the player's", "&bentry in this vault."));
+        localeConfiguration.addDefault("SortButtonTitle", "&dSorted by: &e{SortMode}");
+        localeConfiguration.addDefault("SortButtonDesc", Arrays.asList("&bClick to sort xrayers", "&bby the next criteria."));
+        localeConfiguration.addDefault("SortModeStorage", "storage order");
+        localeConfiguration.addDefault("SortModeHandled", "times handled");
+        localeConfiguration.addDefault("SortModeFirstDetected", "first detected");
+        localeConfiguration.addDefault("SortModeLastSeen", "last seen");
+        localeConfiguration.addDefault("SearchButtonTitle", "&dSearch: &e{NameFilter}");
+        localeConfiguration.addDefault("SearchButtonNoFilter", "everyone");
+        localeConfiguration.addDefault("SearchButtonDesc", Arrays.asList("&bSearch by name start with", "&e/axh vault <name> [sort]", "&bClick to clear the search."));
         localeConfiguration.addDefault("HandledXrayerSlotName", "&aHandled xrayer slot #{Slot}");
         localeConfiguration.addDefault("EntryDesc", Arrays.asList("&aConsecutive times handled: &b{HandledTimesAmount}", "&aFirst time detected: &b{FirstTimeDetected}", "&aLast seen: &b{LastSeenTime}"));
         localeConfiguration.addDefault("EntryDescInspector", Arrays.asList("&aCLICK TO TELEPORT to detected location","&aConsecutive times handled: &b{HandledTimesAmount}", "&aFirst time detected: &b{FirstTimeDetected}", "&aLast seen: &b{LastSeenTime}"));
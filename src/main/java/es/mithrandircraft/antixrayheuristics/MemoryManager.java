@@ -4,23 +4,20 @@
 
 package es.mithrandircraft.antixrayheuristics;
 
-import com.google.common.reflect.TypeToken;
-import com.google.gson.Gson;
-import org.apache.commons.dbcp.BasicDataSource;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.EntityEquipment;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 
 import java.io.*;
-import java.sql.*;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 class MemoryManager {
 
@@ -28,406 +25,143 @@ class MemoryManager {
 
     MemoryManager(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
 
-    //SQL Data:
-    private BasicDataSource dataSource; //Stores a pool of sql connections
+    private XrayerRepository repository; //Configured storage behind a read-through cache, null if the storage type is unknown
+    private String storageType; //Type the repository was opened as, config.yml may say otherwise after a reload
+    private StorageWriter writer; //Stores detections in batches, on its own thread
+    private volatile boolean storageOpen = false; //Set once storage is open and its schema upgraded, cleared when it's closed
+    private boolean storageClosed = false; //Closed before it finished opening. Guarded by the repository
+    private final List<Runnable> pendingReads = new ArrayList<>(); //Reads asked for while storage was opening, run once it's open
+    private boolean storageOpening = false; //Guarded by pendingReads
 
-    //JSON Data:
-    private List<Xrayer> storedXrayersFromJSON = new ArrayList<Xrayer>(); //Used for loading xrayer data from JSON
+    private final Set<String> registered = ConcurrentHashMap.newKeySet(); //UUIDs of the stored xrayers, so other players' quits never reach storage
+    private volatile boolean registeredLoaded = false; //Until then any player may be registered
 
-    //The following methods manage persistent memory resources (SQL or JSON is managed depending on plugin config.yml)
+    private static final int MIGRATION_BATCH = 100; //Xrayers per page walked by the background migrations
+
+    //The following methods manage persistent memory resources (SQL, embedded SQL or JSON is picked once from plugin config.yml)
     //The methods are designed to be called asynchronously through Bukkit's scheduler, and return data through a callback function:
 
-    //Stores player as xrayer with data
-    void StorePlayerData(Player player, final StorePlayerDataCallback callback)
+    /**
+     * Opens the storage configured in config.yml on a background task, as upgrading the schema of an older registry may
+     * take a while. Detections are held in the writer's queue meanwhile, and the writer, the vault and the background
+     * migrations only get to the storage once it's done.
+     */
+    void OpenStorage()
     {
-        switch (mainClassAccess.getConfig().getString("StorageType")) {
-            case "MYSQL":
-                java.sql.Connection cn = null;
-                try {
-                    cn = dataSource.getConnection();
-                    if(cn != null)
-                    {
-                        SQLPlayerDataStore(cn, player, callback);
-                    }
-                } catch (SQLException e) {
-                    System.err.print(e);
-                } finally {
-                        try {
-                            cn.close();
-                        } catch (SQLException e) {
-                            System.err.print(e);
-                        }
-                }
-                break;
-            case "JSON":
-                JSONPlayerDataStore(player, callback);
-                break;
-            default:
-                break;
-        }
+        storageType = mainClassAccess.getConfig().getString("StorageType");
+        XrayerRepository storage = CreateRepository(storageType);
+        if (storage == null) return;
+        repository = new CachingXrayerRepository(storage, mainClassAccess.getConfig().getInt("StorageCacheMaxEntries", 256));
+        writer = new StorageWriter(mainClassAccess, repository, mainClassAccess.getConfig().getInt("StorageWriterQueueSize", 1024));
+        synchronized (pendingReads) { storageOpening = true; }
+
+        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> {
+            synchronized (repository) {
+                if (storageClosed) return; //Server stopped first
+                repository.Open(); //Off the main thread it returns with the schema upgraded
+                storageOpen = true;
+                writer.Start();
+            }
+            final List<Runnable> reads;
+            synchronized (pendingReads) {
+                storageOpening = false;
+                reads = new ArrayList<>(pendingReads);
+                pendingReads.clear();
+            }
+            for (Runnable read : reads) read.run(); //Vault pages, inspections and teleports asked for meanwhile
+            LoadRegistered();
+
+            //Re-encode legacy belongings and fill in missing player names in the background, once startup has settled:
+            Bukkit.getScheduler().runTaskLaterAsynchronously(mainClassAccess, () -> {
+                MigrateLegacyBelongings();
+                BackfillPlayers();
+            }, 200L);
+        });
     }
 
-    //Stores fake player as xrayer with fake data
-    void StoreDummyPlayerData(final StorePlayerDataCallback callback)
+    /**Stores every queued detection, then flushes and closes the storage. Called from the main thread, waits for it to finish opening.*/
+    void CloseStorage()
     {
-        switch (mainClassAccess.getConfig().getString("StorageType")) {
-            case "MYSQL":
-                java.sql.Connection cn = null;
-                try {
-                    cn = dataSource.getConnection();
-                    if(cn != null)
-                    {
-                        SQLPlayerDataStore(cn, null, callback);
-                    }
-                } catch (SQLException e) {
-                    System.err.print(e);
-                } finally {
-                    try {
-                        cn.close();
-                    } catch (SQLException e) {
-                        System.err.print(e);
-                    }
-                }
-                break;
-            case "JSON":
-                JSONPlayerDataStore(null, callback);
-                break;
-            default:
-                break;
+        if (repository == null) return;
+        synchronized (pendingReads) {
+            storageOpening = false;
+            pendingReads.clear();
         }
-    }
-
-    //Returns various array lists through callback function containing all registered xrayer UUID's, handled times amount, and firstHandled time.
-    public void GetAllBaseXrayerData(final CallbackGetAllBaseXrayerData callback)
-    {
-        switch (mainClassAccess.getConfig().getString("StorageType")) {
-            case "MYSQL":
-                java.sql.Connection cn = null;
-                try {
-                    cn = dataSource.getConnection();
-                    if(cn != null) {
-                        SQLGetAllBaseXrayerData(cn, callback);
-                    }
-                } catch (SQLException e) {
-                    System.err.print(e);
-                } finally {
-                    try {
-                        cn.close();
-                    } catch (SQLException e) {
-                        System.err.print(e);
-                    }
-                }
-                break;
-            case "JSON":
-                JSONGetAllBaseXrayerData(callback);
-                break;
-            default:
-                break;
+        synchronized (repository) {
+            storageClosed = true;
+            writer.Shutdown(); //If storage never opened, the detections it held are dropped
+            if (!storageOpen) return;
+            storageOpen = false;
+            repository.Close();
         }
     }
 
-    //Returns ItemStack array through callback function containing all confiscated ItemStacks from the specified player by UUID
-    public void GetXrayerBelongings(String xrayerUUID, final CallbackGetXrayerBelongings callback)
+    /**
+     * Opens storage of the given type for a migration, sharing the configured storage's repository when it's the type it
+     * was opened as, even if StorageType was changed and reloaded since (so the same files or tables never get two
+     * writers). Must be handed back through ReleaseRepository.
+     *
+     * @return The open repository, null if the storage type is unknown, or it's the configured storage and isn't open yet
+     */
+    XrayerRepository AcquireRepository(String type)
     {
-        switch (mainClassAccess.getConfig().getString("StorageType")) {
-            case "MYSQL":
-                java.sql.Connection cn = null;
-                try {
-                    cn = dataSource.getConnection();
-                    if(cn != null) {
-                        SQLGetXrayerBelongings(cn, xrayerUUID, callback);
-                    }
-                } catch (SQLException e) {
-                    System.err.print(e);
-                } finally {
-                    try {
-                        cn.close();
-                    } catch (SQLException e) {
-                        System.err.print(e);
-                    }
-                }
-                break;
-            case "JSON":
-                JSONGetXrayerBelongings(xrayerUUID, callback);
-            default:
-                break;
-        }
+        if (repository != null && type.equals(storageType)) return storageOpen ? repository : null;
+        XrayerRepository storage = CreateRepository(type);
+        if (storage != null) storage.Open();
+        return storage;
     }
 
-    //Returns HandleLocation Location through callback function by UUID
-    public void GetXrayerHandleLocation(String xrayerUUID, final CallbackGetXrayerHandleLocation callback)
+    /**Closes a repository acquired through AcquireRepository, unless it's the configured storage's*/
+    void ReleaseRepository(XrayerRepository storage)
     {
-        switch (mainClassAccess.getConfig().getString("StorageType")) {
-            case "MYSQL":
-                java.sql.Connection cn = null;
-                try {
-                    cn = dataSource.getConnection();
-                    if(cn != null) {
-                        SQLGetXrayerHandleLocation(cn, xrayerUUID, callback);
-                    }
-                } catch (SQLException e) {
-                    System.err.print(e);
-                } finally {
-                    try {
-                        cn.close();
-                    } catch (SQLException e) {
-                        System.err.print(e);
-                    }
-                }
-                break;
-            case "JSON":
-                JSONGetXrayerHandleLocation(xrayerUUID, callback);
-            default:
-                break;
-        }
+        if (storage == null) return;
+        if (storage == repository) LoadRegistered(); //A migration may have copied xrayers into it
+        else storage.Close();
     }
 
-    //Deletes xrayer with specified UUID from memory
-    public void DeleteXrayer(String xrayerUUID)
-    {
-        switch (mainClassAccess.getConfig().getString("StorageType")) {
-            case "MYSQL":
-                java.sql.Connection cn = null;
-                try {
-                    cn = dataSource.getConnection();
-                    if(cn != null) {
-                        SQLDeleteXrayer(cn, xrayerUUID);
-                    }
-                } catch (SQLException e) {
-                    System.err.print(e);
-                } finally {
-                    try {
-                        cn.close();
-                    } catch (SQLException e) {
-                        System.err.print(e);
-                    }
-                }
-                break;
-            case "JSON":
-                JSONDeleteXrayer(xrayerUUID);
-                break;
-            default:
-                break;
-        }
-    }
+    /**Detection storage writer, null if the storage type is unknown*/
+    StorageWriter GetWriter() { return writer; }
 
-    //Deletes all registered xrayers (basically leaves memory empty)
-    public void DeleteRegisteredXrayers()
-    {
-        switch (mainClassAccess.getConfig().getString("StorageType")) {
-            case "MYSQL":
-                java.sql.Connection cn = null;
-                try {
-                    cn = dataSource.getConnection();
-                    if(cn != null) {
-                        SQLDeleteRegistry(cn);
-                    }
-                } catch (SQLException e) {
-                    System.err.print(e);
-                } finally {
-                    try {
-                        cn.close();
-                    } catch (SQLException e) {
-                        System.err.print(e);
-                    }
-                }
-                break;
-            case "JSON":
-                JSONStoreInFile("[]");
-                break;
-            default:
-                break;
-        }
-    }
-
-    //------------------ SQL RELATED OPERATIONS ------------------:
-
-    void InitializeDataSource()
-    {
-        BasicDataSource basicDataSource = new BasicDataSource();
-
-        if(!mainClassAccess.getConfig().getString("SQLDriverClassName").equals(""))
-            basicDataSource.setDriverClassName(mainClassAccess.getConfig().getString("SQLDriverClassName"));
-        basicDataSource.setUsername(mainClassAccess.getConfig().getString("SQLUsername"));
-        basicDataSource.setPassword(mainClassAccess.getConfig().getString("SQLPassword"));
-        basicDataSource.setUrl("jdbc:mysql://" + mainClassAccess.getConfig().getString("SQLHost") + ":" + mainClassAccess.getConfig().getString("SQLPort") + "/" + mainClassAccess.getConfig().getString("SQLDatabaseName") + "?useSSL=false");
-        basicDataSource.setMaxActive(mainClassAccess.getConfig().getInt("SQLMaxActiveConnections"));
-        basicDataSource.setTestOnBorrow(true);
-        basicDataSource.setValidationQuery("SELECT 1");
-
-        dataSource = basicDataSource;
-    }
-    void CloseDataSource()
-    {
-        try {
-            dataSource.close();
-        } catch (SQLException e) {
-            System.err.print(e);
-        }
-    }
-
-    //Creates the Xrayers table
-    void SQLCreateTableIfNotExists() throws SQLException
+    //Queues player for storing as xrayer with data (doesn't block, can be called from the main thread)
+    void StorePlayerData(Player player, final StorePlayerDataCallback callback)
     {
-        java.sql.Connection cn = null;
-        try {
-            cn = dataSource.getConnection();
-            if(cn != null) {
-                PreparedStatement create = cn.prepareStatement("CREATE TABLE IF NOT EXISTS Xrayers(UUID VARCHAR(36) NOT NULL, Handled INT NOT NULL, FirstHandleTime VARCHAR(32) NOT NULL, HandleLocation VARCHAR(128) NOT NULL, Belongings TEXT NULL, PRIMARY KEY(UUID))");
-
-                create.executeUpdate();
-            }
-        } catch (SQLException e) {
-            System.err.print(e);
-        } finally {
-            try {
-                cn.close();
-            } catch (SQLException e) {
-                System.err.print(e);
-            }
-        }
+        StoreHandle(player, callback);
     }
 
-    //Returns true if UUID was found in the database
-    private boolean SQLFindUUID(java.sql.Connection connection, String n) throws SQLException
+    //Queues fake player for storing as xrayer with fake data
+    void StoreDummyPlayerData(final StorePlayerDataCallback callback)
     {
-        PreparedStatement query = connection.prepareStatement("SELECT COUNT(1) FROM Xrayers WHERE UUID = ?");
-        query.setString(1, n);
-
-        ResultSet result = query.executeQuery();
-
-        result.next();
-        return result.getInt(1) == 1;
+        StoreHandle(null, callback);
     }
-    //Stores player name as xrayer and some other info + player belongings if configured (or dummy data if player is null), ONLY IF there isn't UUID related information already stored.
-    private void SQLPlayerDataStore(java.sql.Connection connection, Player player, final StorePlayerDataCallback callback) throws SQLException
-    {
-        String playerUUID;
-        //Assign true UUID?
-        if(player != null) playerUUID = player.getUniqueId().toString();
-        //Assign a random "fake" UUID?
-        else playerUUID = UUID.randomUUID().toString();
-
-        if(!SQLFindUUID(connection, playerUUID)) //Primary key (player UUID) doesn't already exist
-        {
-            String serializedPlayerLocation;
-            //Assign true "serialized" location
-            if(player != null) serializedPlayerLocation = player.getLocation().getWorld().getName() + "," + player.getLocation().getX() + "," + player.getLocation().getY() + "," + player.getLocation().getZ() + "," + player.getLocation().getPitch() + "," + player.getLocation().getYaw();
-            //Assign default "fake" "serialized" location
-            else if (!mainClassAccess.getConfig().getStringList("TrackWorlds").isEmpty()) serializedPlayerLocation = mainClassAccess.getConfig().getStringList("TrackWorlds").get(0) + ",0.0,0.0,0.0,0.0,0.0";
-            else serializedPlayerLocation = "world,0.0,0.0,0.0,0.0,0.0";
-
-            if(mainClassAccess.getConfig().getBoolean("StoreCopy")) //Full store
-            {
-                DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-                LocalDateTime now = LocalDateTime.now();
-
-                PreparedStatement entry = connection.prepareStatement("INSERT INTO Xrayers(UUID, Handled, FirstHandleTime, HandleLocation, Belongings) VALUES(?,?,?,?,?)");
-                entry.setString(1, playerUUID);
-                entry.setInt(2, 1);
-                entry.setString(3, dtf.format(now));
-                entry.setString(4, serializedPlayerLocation);
-                //Assign true player inventory and equipment
-                if(player != null) entry.setString(5, BukkitSerializer.itemStackArrayToBase64(BukkitSerializer.InventoryAndEquipmentToSingleItemStackArray(player.getInventory(), player.getEquipment())));
-                //Assign "fake" player inventory and equipment
-                else
-                {
-                    Inventory madeUpInventory = new MadeUpInventory();
-                    EntityEquipment madeUpEquipment = new MadeUpEquipment();
-                    entry.setString(5, BukkitSerializer.itemStackArrayToBase64(BukkitSerializer.InventoryAndEquipmentToSingleItemStackArray(madeUpInventory, madeUpEquipment)));
-                }
-
-                entry.executeUpdate();
-            }
-            else //Partial store
-            {
-                DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-                LocalDateTime now = LocalDateTime.now();
-
-                PreparedStatement entry = connection.prepareStatement("INSERT INTO Xrayers(UUID, Handled, FirstHandleTime, HandleLocation) VALUES(?,?,?,?)");
-                entry.setString(1, playerUUID);
-                entry.setInt(2, 1);
-                entry.setString(3, dtf.format(now));
-                entry.setString(4, serializedPlayerLocation);
-
-                entry.executeUpdate();
-            }
-
-            if(callback != null)
-            {
-                Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
-                    @Override
-                    public void run() {
-                        callback.onInsertDone(1);
-                    }
-                });
-            }
-        }
-        else //Primary key (player UUID) already exists
-        {
-            //Add +1 to Handled column
-            PreparedStatement update = connection.prepareStatement("UPDATE Xrayers SET Handled = Handled + 1 WHERE UUID = ?");
-            update.setString(1, playerUUID);
 
-            update.executeUpdate();
-
-            //Get Handled column value
-            PreparedStatement query = connection.prepareStatement("SELECT Handled FROM Xrayers WHERE UUID = ?");
-            query.setString(1, playerUUID);
-
-            ResultSet result = query.executeQuery();
-
-            result.next();
-
-            if(callback != null)
-            {
-                final int timesHandledFinal = result.getInt("Handled");
-                Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
-                    @Override
-                    public void run() {
-                        callback.onInsertDone(timesHandledFinal);
-                    }
-                });
-            }
-        }
-    }
-    private void SQLGetAllBaseXrayerData(java.sql.Connection connection, final CallbackGetAllBaseXrayerData callback) throws SQLException //Returns all of the basic xrayer information (pretty much everything except for the inventory and handlecoordinates)
+    //Returns a page of registered xrayers' base data (UUID, handled times amount, firstHandled time, name and last seen time)
+    //as the query sorts and filters them, along with how many xrayers the query lists, through callback function.
+    public void GetBaseXrayerPage(XrayerQuery query, Xrayer after, int limit, final CallbackGetXrayerPage callback)
     {
-        PreparedStatement entry = connection.prepareStatement("SELECT UUID, Handled, FirstHandleTime FROM Xrayers");
-
-        ResultSet result = entry.executeQuery();
-
-        ArrayList<String> UUIDs = new ArrayList<String>();
-        ArrayList<Integer> handledAmounts = new ArrayList<Integer>();
-        ArrayList<String> firstHandledTimes = new ArrayList<String>();
-
-        while(result.next())
-        {
-            UUIDs.add(result.getString("UUID"));
-            handledAmounts.add(result.getInt("Handled"));
-            firstHandledTimes.add(result.getString("FirstHandleTime"));
-        }
+        if (Deferred(() -> GetBaseXrayerPage(query, after, limit, callback))) return;
+        final List<Xrayer> xrayers = repository.GetBasePage(query, after, limit);
+        final int total = repository.Count(query);
+        if (xrayers == null || total < 0) return;
 
-        //We send the extracted data to the vault array from here:
-        mainClassAccess.vault.SubstituteXrayerInfoLists(UUIDs, handledAmounts, firstHandledTimes);
-        Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread
+        Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
             @Override
             public void run() {
-                callback.onQueryDone();
+                callback.onQueryDone(xrayers, total);
             }
         });
     }
-    private void SQLGetXrayerBelongings(java.sql.Connection connection, String xrayerUUID, CallbackGetXrayerBelongings callback) throws SQLException //Gets an xrayer player's (by UUID) confiscated belongings
-    {
-        PreparedStatement query = connection.prepareStatement("SELECT Belongings FROM Xrayers WHERE UUID = ?");
-        query.setString(1, xrayerUUID);
-
-        ResultSet result = query.executeQuery();
 
-        result.next();
+    //Returns ItemStack array through callback function containing all confiscated ItemStacks from the specified player by UUID
+    //(null if stored without belongings, StoreCopy: false). No callback if the xrayer isn't registered, or on failure.
+    public void GetXrayerBelongings(String xrayerUUID, final CallbackGetXrayerBelongings callback)
+    {
+        if (Deferred(() -> GetXrayerBelongings(xrayerUUID, callback))) return;
+        byte[] storedBelongings = repository.GetBelongings(xrayerUUID);
+        //Null belongings are also how a missing xrayer or a failed read look, its handle location tells them apart:
+        if (storedBelongings == null && repository.GetHandleLocation(xrayerUUID) == null) return;
 
         try {
-            final ItemStack[] belongings = BukkitSerializer.itemStackArrayFromBase64(result.getString("Belongings"));
+            final ItemStack[] belongings = storedBelongings != null ? BelongingsCodec.Decode(storedBelongings) : null;
             Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
                 @Override
                 public void run() {
@@ -438,17 +172,16 @@ class MemoryManager {
             System.err.print(e);
         }
     }
-    private void SQLGetXrayerHandleLocation(java.sql.Connection connection, String xrayerUUID, CallbackGetXrayerHandleLocation callback) throws SQLException //Gets an xrayer player's (by UUID) handle location
-    {
-        PreparedStatement query = connection.prepareStatement("SELECT HandleLocation FROM Xrayers WHERE UUID = ?");
-        query.setString(1, xrayerUUID);
-
-        ResultSet result = query.executeQuery();
 
-        result.next();
+    //Returns HandleLocation Location through callback function by UUID
+    public void GetXrayerHandleLocation(String xrayerUUID, final CallbackGetXrayerHandleLocation callback)
+    {
+        if (Deferred(() -> GetXrayerHandleLocation(xrayerUUID, callback))) return;
+        String serializedHandleLocation = repository.GetHandleLocation(xrayerUUID);
+        if (serializedHandleLocation == null) return;
 
         //Deserialize obtained location string:
-        String[] serializedPlayerLocation = result.getString("HandleLocation").split(",");
+        String[] serializedPlayerLocation = serializedHandleLocation.split(",");
         final Location deserializedHandleLocation = new Location(Bukkit.getWorld(serializedPlayerLocation[0]), Double.parseDouble(serializedPlayerLocation[1]), Double.parseDouble(serializedPlayerLocation[2]), Double.parseDouble(serializedPlayerLocation[3]), Float.parseFloat(serializedPlayerLocation[4]), Float.parseFloat(serializedPlayerLocation[5]));
         Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
             @Override
@@ -458,245 +191,179 @@ class MemoryManager {
         });
     }
 
-    private void SQLDeleteXrayer(java.sql.Connection connection, String xrayerUUID) throws SQLException //Removes player (by UUID) from xrayers database
+    //Whether the player may be registered as xrayer, without querying storage (true while registered UUIDs are still loading)
+    boolean MayBeRegistered(String xrayerUUID)
     {
-        PreparedStatement purge = connection.prepareStatement("DELETE FROM Xrayers WHERE UUID = ?");
-        purge.setString(1, xrayerUUID);
-
-        purge.executeUpdate();
+        return storageOpen && (!registeredLoaded || registered.contains(xrayerUUID));
     }
 
-    private void SQLDeleteRegistry(java.sql.Connection connection) throws SQLException //Truncates the whole Xrayers table, basically emptying all registered xrayers
+    //Records a registered xrayer's current name and last seen time (no-op for players that aren't registered)
+    public void UpdateXrayerPlayer(String xrayerUUID, String name, long lastSeen)
     {
-        PreparedStatement purge = connection.prepareStatement("TRUNCATE TABLE Xrayers");
-
-        purge.executeUpdate();
+        if (storageOpen) repository.UpdatePlayer(xrayerUUID, name, lastSeen);
     }
 
-
-    //------------------ JSON RELATED OPERATIONS ------------------
-
-    //Java File I.O. functions
-
-    public boolean JSONFileCreateIfNotExists() //Returns true if file was created
+    //Deletes xrayer with specified UUID from memory
+    public void DeleteXrayer(String xrayerUUID)
     {
-        try {
-            //Create file (will do nothing if it already exists):
-            if(new File(mainClassAccess.getDataFolder().getAbsolutePath() + "/data.json").createNewFile()) { JSONStoreInFile("[]"); } //Store empty JSON array in file
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
-        return true;
+        if (!storageOpen) return;
+        repository.Delete(xrayerUUID);
+        registered.remove(xrayerUUID);
     }
-    private void JSONStoreInFile(String toStore) //Writes json content as string to file
+
+    //Deletes all registered xrayers (basically leaves memory empty)
+    public void DeleteRegisteredXrayers()
     {
-        try {
-            FileWriter writer = new FileWriter(mainClassAccess.getDataFolder().getAbsolutePath() + "/data.json");
-            writer.write(toStore);
-            writer.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        if (!storageOpen) return;
+        repository.DeleteAll();
+        registered.clear();
     }
-    private BufferedReader JSONGetFromFile() //Gets json content from file in BufferedReader format
+
+    //Rewrites belongings still stored as legacy Base64 Java serialization with the binary codec, one xrayer at a time.
+    //Only swaps belongings nothing else changed meanwhile, so it's safe alongside regular storage use.
+    private void MigrateLegacyBelongings()
     {
-        try {
-            return new BufferedReader(new FileReader(mainClassAccess.getDataFolder().getAbsolutePath() + "/data.json")); //Return buffered file contents
-        }catch (IOException e) {
-            e.printStackTrace();
-            return null;
+        if (!storageOpen) return;
+        int migrated = 0;
+        Xrayer cursor = null;
+        while (storageOpen) {
+            List<Xrayer> page = repository.GetBasePage(XrayerQuery.ALL, cursor, MIGRATION_BATCH);
+            if (page == null || page.isEmpty()) break;
+            for (Xrayer xrayer : page) {
+                if (!storageOpen) return;
+                byte[] storedBelongings = repository.GetBelongings(xrayer.UUID);
+                if (storedBelongings == null || !BelongingsCodec.IsLegacy(storedBelongings)) continue;
+                try {
+                    ItemStack[] belongings = BelongingsCodec.Decode(storedBelongings);
+                    if (belongings != null && repository.ReplaceBelongings(xrayer.UUID, storedBelongings, BelongingsCodec.Encode(belongings))) migrated++;
+                } catch (IOException | IllegalStateException e) {
+                    System.err.print(e); //Left as is, it stays readable
+                }
+            }
+            cursor = page.get(page.size() - 1);
         }
+        if (migrated > 0) System.out.println("[AntiXrayHeuristics] Re-encoded the stored belongings of " + migrated + " xrayers.");
     }
 
-    //GSON Serialization functions
-
-    private String JSONSerializeXrayersData(List<Xrayer> xrayers) //Serializes class ArrayList to json String
+    //Stores the names and last played times the server knows for xrayers stored without a name (by older versions), so
+    //the vault can search and sort them. Xrayers the server never saw (dummies) are looked up again on every start.
+    private void BackfillPlayers()
     {
-        return new Gson().toJson(xrayers);
+        if (!storageOpen) return;
+        int filled = 0;
+        Xrayer cursor = null;
+        while (storageOpen) {
+            List<Xrayer> page = repository.GetBasePage(XrayerQuery.ALL, cursor, MIGRATION_BATCH);
+            if (page == null || page.isEmpty()) break;
+            for (Xrayer xrayer : page) {
+                if (!storageOpen) return;
+                if (xrayer.Name != null) continue;
+                OfflinePlayer player = Bukkit.getServer().getOfflinePlayer(UUID.fromString(xrayer.UUID));
+                if (player.getName() != null && repository.UpdatePlayer(xrayer.UUID, player.getName(), Math.max(xrayer.LastSeen, player.getLastPlayed()))) filled++;
+            }
+            cursor = page.get(page.size() - 1);
+        }
+        if (filled > 0) System.out.println("[AntiXrayHeuristics] Stored the names of " + filled + " xrayers.");
     }
 
-    private List<Xrayer> JSONDeserializeXrayersData(BufferedReader xrayers) //Serializes from BufferedReader to ArrayList.
+    //Collects the UUIDs of every stored xrayer, a page at a time. Xrayers stored meanwhile are added as they're stored.
+    private void LoadRegistered()
     {
-        return new Gson().fromJson(xrayers, new TypeToken<ArrayList<Xrayer>>(){}.getType()); //TypeToken gets the type of an arraylist of xrayers
+        Xrayer cursor = null;
+        while (storageOpen) {
+            List<Xrayer> page = repository.GetBasePage(XrayerQuery.ALL, cursor, MIGRATION_BATCH);
+            if (page == null) return; //Stays unloaded, every player may be registered
+            if (page.isEmpty()) break;
+            for (Xrayer xrayer : page) registered.add(xrayer.UUID);
+            cursor = page.get(page.size() - 1);
+        }
+        registeredLoaded = storageOpen;
     }
 
-    //File data manipulation and querying using GSON
+    //------------------ HELPERS ------------------
 
-    private void JSONRefreshLoadedXrayerData() //Loads json data from file and converts it to List, assigning it to storedXrayersFromJSON, consequently refreshing it in RAM Stack
+    //True if storage isn't open, so the caller mustn't read it now. While it's opening, read is queued and runs once it's
+    //open (on the task that opened it). Without storage (unknown type, or closed) it's dropped.
+    private boolean Deferred(Runnable read)
     {
-        storedXrayersFromJSON = JSONDeserializeXrayersData(JSONGetFromFile());
+        if (storageOpen) return false;
+        synchronized (pendingReads) {
+            if (storageOpen) return false;
+            if (storageOpening) pendingReads.add(read);
+            return true;
+        }
     }
 
-    public void JSONFlushLoadedXrayerData() //Removes the loaded xrayer data from memory. Used for when nothing is actually using it (no one's reading it, definitely).
+    private XrayerRepository CreateRepository(String storageType) //Uncached storage of a type (JSON, MYSQL or EMBEDDED), null if unknown
     {
-        storedXrayersFromJSON.clear();
+        switch (storageType) {
+            case "MYSQL":
+                return new SQLXrayerRepository(mainClassAccess, false);
+            case "EMBEDDED":
+                return new SQLXrayerRepository(mainClassAccess, true);
+            case "JSON":
+                return new JSONXrayerStore(mainClassAccess.getDataFolder(), mainClassAccess.getConfig().getLong("JSONJournalSyncIntervalMillis", 1000), mainClassAccess.getConfig().getInt("JSONCompactJournalAfterEntries", 500));
+            default:
+                return null;
+        }
     }
 
-    private void JSONPlayerDataStore(Player player, final StorePlayerDataCallback callback) //Stores player name as xrayer and some other info (+ player belongings if configured), ONLY IF there isn't information already stored. Also notifies through callback on finish
+    private void StoreHandle(Player player, final StorePlayerDataCallback callback) //Queues player as xrayer (or dummy data if player is null), or a handle if already stored. Also notifies through callback on finish
     {
+        if (writer == null) return;
+
         String playerUUID;
         //Assign true UUID?
         if(player != null) playerUUID = player.getUniqueId().toString();
         //Assign a random "fake" UUID?
         else playerUUID = UUID.randomUUID().toString();
 
-        //Handled times for returning:
-        int timesHandled = 0;
-
-        //Refresh loaded xrayers in RAM Stack:
-        JSONRefreshLoadedXrayerData();
-        //Check if xrayer is already stored?:
-        boolean exists = false;
-        for(Xrayer xrayer : storedXrayersFromJSON){
-            if(xrayer.UUID.equals(playerUUID))
-            {
-                exists = true;
-                //Also add +1 to handled:
-                xrayer.Handled += 1;
-                timesHandled = xrayer.Handled;
-                //Store List back to file:
-                String serial = JSONSerializeXrayersData(storedXrayersFromJSON);
-                JSONStoreInFile(serial);
-                break;
-            }
-        }
-        if (!exists) { //player UUID doesn't already exist in file
-
-            String serializedPlayerLocation;
-            //Assign true "serialized" location
-            if(player != null) serializedPlayerLocation = player.getLocation().getWorld().getName() + "," + player.getLocation().getX() + "," + player.getLocation().getY() + "," + player.getLocation().getZ() + "," + player.getLocation().getPitch() + "," + player.getLocation().getYaw();
-            //Assign default "fake" "serialized" location
-            else if (!mainClassAccess.getConfig().getStringList("TrackWorlds").isEmpty()) serializedPlayerLocation = mainClassAccess.getConfig().getStringList("TrackWorlds").get(0) + ",0.0,0.0,0.0,0.0,0.0";
-            else serializedPlayerLocation = "world,0.0,0.0,0.0,0.0,0.0";
-
-            if (mainClassAccess.getConfig().getBoolean("StoreCopy")) //Full store
-            {
-                DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-                LocalDateTime now = LocalDateTime.now();
-
-                //Add xrayer to List:
-                //Existing inventory and equipment
-                if(player != null) storedXrayersFromJSON.add(new Xrayer(playerUUID, 1, dtf.format(now), serializedPlayerLocation, BukkitSerializer.itemStackArrayToBase64(BukkitSerializer.InventoryAndEquipmentToSingleItemStackArray(player.getInventory(), player.getEquipment()))));
-                //Made up inventory and equipment
-                else {
-                    Inventory madeUpInventory = new MadeUpInventory();
-                    EntityEquipment madeUpEquipment = new MadeUpEquipment();
-                    storedXrayersFromJSON.add(new Xrayer(playerUUID, 1, dtf.format(now), serializedPlayerLocation, BukkitSerializer.itemStackArrayToBase64(BukkitSerializer.InventoryAndEquipmentToSingleItemStackArray(madeUpInventory, madeUpEquipment))));
-                }
-                //Store List back to file:
-                String serial = JSONSerializeXrayersData(storedXrayersFromJSON);
-                JSONStoreInFile(serial);
-            } else //Partial store
-            {
-                DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss");
-                LocalDateTime now = LocalDateTime.now();
-
-                //Add xrayer to List:
-                storedXrayersFromJSON.add(new Xrayer(playerUUID, 1, dtf.format(now), serializedPlayerLocation, null));
-                //Store List back to file:
-                JSONStoreInFile(JSONSerializeXrayersData(storedXrayersFromJSON));
-            }
+        String serializedPlayerLocation;
+        //Assign true "serialized" location
+        if(player != null) serializedPlayerLocation = player.getLocation().getWorld().getName() + "," + player.getLocation().getX() + "," + player.getLocation().getY() + "," + player.getLocation().getZ() + "," + player.getLocation().getPitch() + "," + player.getLocation().getYaw();
+        //Assign default "fake" "serialized" location
+        else if (!mainClassAccess.getConfig().getStringList("TrackWorlds").isEmpty()) serializedPlayerLocation = mainClassAccess.getConfig().getStringList("TrackWorlds").get(0) + ",0.0,0.0,0.0,0.0,0.0";
+        else serializedPlayerLocation = "world,0.0,0.0,0.0,0.0,0.0";
 
-            if(callback != null) {
-                Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
-                    @Override
-                    public void run() {
-                        callback.onInsertDone(1);
-                    }
-                });
-            }
-        } else if(callback != null) {
-            final int timesHandledFinal = timesHandled;
-            Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
-                @Override
-                public void run() {
-                    callback.onInsertDone(timesHandledFinal);
-                }
-            });
-        }
-    }
-    private void JSONGetAllBaseXrayerData(CallbackGetAllBaseXrayerData callback) //Returns all of the basic xrayer information (pretty much everything except for the inventory and handlecoordinates)
-    {
-        //Refresh loaded xrayers in RAM Stack:
-        JSONRefreshLoadedXrayerData();
-        //Extract information from storedXrayersFromJSON:
-
-        ArrayList<String> UUIDs = new ArrayList<String>();
-        ArrayList<Integer> handledAmounts = new ArrayList<Integer>();
-        ArrayList<String> firstHandledTimes = new ArrayList<String>();
-
-        for(Xrayer xrayer : storedXrayersFromJSON)
-        {
-            UUIDs.add(xrayer.UUID);
-            handledAmounts.add(xrayer.Handled);
-            firstHandledTimes.add(xrayer.FirstHandleTime);
-        }
-
-        //We send the extracted data to the vault array from here:
-        mainClassAccess.vault.SubstituteXrayerInfoLists(UUIDs, handledAmounts, firstHandledTimes);
-        Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread
-            @Override
-            public void run() {
-                callback.onQueryDone();
-            }
-        });
-    }
-    private void JSONGetXrayerBelongings(String xrayerUUID, CallbackGetXrayerBelongings callback)
-    {
-        //Refresh loaded xrayers in RAM Stack:
-        JSONRefreshLoadedXrayerData();
-        //Find uuid, and return it's belongings:
-        for(Xrayer xrayer : storedXrayersFromJSON)
+        ItemStack[] belongings = null; //Partial store
+        if (mainClassAccess.getConfig().getBoolean("StoreCopy")) //Full store
         {
-            if(xrayer.UUID.equals(xrayerUUID)) {
-                try {
-                    final ItemStack[] belongings = BukkitSerializer.itemStackArrayFromBase64(xrayer.Belongings);
-                    Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
-                        @Override
-                        public void run() {
-                            callback.onQueryDone(belongings);
-                        }
-                    });
-                } catch (IOException e){
-                    System.err.print(e);
-                }
+            //Existing inventory and equipment
+            if(player != null) belongings = CopyOf(BukkitSerializer.InventoryAndEquipmentToSingleItemStackArray(player.getInventory(), player.getEquipment()));
+            //Made up inventory and equipment
+            else {
+                Inventory madeUpInventory = new MadeUpInventory();
+                EntityEquipment madeUpEquipment = new MadeUpEquipment();
+                belongings = BukkitSerializer.InventoryAndEquipmentToSingleItemStackArray(madeUpInventory, madeUpEquipment);
             }
         }
+
+        final String name = player != null ? player.getName() : null;
+        final long now = System.currentTimeMillis();
+        final ItemStack[] snapshot = belongings;
+        //Read here, on the main thread, at detection time. The writer only encodes it, and only if the xrayer is new:
+        final StorePlayerDataCallback stored = player == null ? callback : handleTimes -> {
+            registered.add(playerUUID);
+            if (callback != null) callback.onInsertDone(handleTimes);
+        };
+        writer.Offer(playerUUID, () -> NewXrayer(playerUUID, serializedPlayerLocation, snapshot, name, now), stored);
     }
-    private void JSONGetXrayerHandleLocation(String xrayerUUID, CallbackGetXrayerHandleLocation callback)
+
+    private static ItemStack[] CopyOf(ItemStack[] items) //Inventory items are live views of the player's, copied before leaving the main thread
     {
-        //Refresh loaded xrayers in RAM Stack:
-        JSONRefreshLoadedXrayerData();
-        //Find uuid, and return it's handle location:
-        for(Xrayer xrayer : storedXrayersFromJSON)
-        {
-            if(xrayer.UUID.equals(xrayerUUID)) {
-
-                //Deserialize obtained location string:
-                String[] serializedPlayerLocation = xrayer.HandleLocation.split(",");
-                final Location deserializedHandleLocation = new Location(Bukkit.getWorld(serializedPlayerLocation[0]), Double.parseDouble(serializedPlayerLocation[1]), Double.parseDouble(serializedPlayerLocation[2]), Double.parseDouble(serializedPlayerLocation[3]), Float.parseFloat(serializedPlayerLocation[4]), Float.parseFloat(serializedPlayerLocation[5]));
-                Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() { //Callback to main thread returns extracted data
-                    @Override
-                    public void run() {
-                        callback.onQueryDone(deserializedHandleLocation);
-                    }
-                });
-            }
-        }
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) if (items[i] != null) copy[i] = items[i].clone();
+        return copy;
     }
-    private void JSONDeleteXrayer(String xrayerUUID)
+
+    private static Xrayer NewXrayer(String playerUUID, String serializedPlayerLocation, ItemStack[] belongings, String name, long now) //Xrayer info handled for the first time, with player belongings if configured
     {
-        //Refresh loaded xrayers in RAM Stack:
-        JSONRefreshLoadedXrayerData();
-        for(Xrayer xrayer : storedXrayersFromJSON)
+        Xrayer xrayer = new Xrayer(playerUUID, 1, Xrayer.FormatTime(now), serializedPlayerLocation, belongings != null ? BelongingsCodec.Encode(belongings) : null);
+        if(name != null)
         {
-            if(xrayer.UUID.equals(xrayerUUID)) {
-                storedXrayersFromJSON.remove(xrayer);
-                //Store List back to file:
-                JSONStoreInFile(JSONSerializeXrayersData(storedXrayersFromJSON));
-                break;
-            }
+            xrayer.Name = name;
+            xrayer.LastSeen = now;
         }
+        return xrayer;
     }
-}
\ No newline at end of file
+}
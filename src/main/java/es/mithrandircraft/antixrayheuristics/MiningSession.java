@@ -4,28 +4,39 @@
 
 package es.mithrandircraft.antixrayheuristics;
 
-import org.bukkit.Location;
-import org.bukkit.Material;
-import org.bukkit.entity.Player;
+class MiningSession { //Contains heuristics tracked per player (primitive state only, kept in SessionStore)
 
-import java.util.Arrays;
+    //Hardcoded heuristics:
+    private static final float maxSuspicionDecreaseProportion = -10f;
+    private static final float minSuspicionDecreaseProportion = -0.1f;
+    private static final float absoluteMinimumSuspicionDecrease = -3.0f; //Players mining below certain speeds should at least have this suspicion level applied, else fp's emerge
 
-class MiningSession { //Contains heuristics tracked per player
+    private static final int maxAccountableMillisecondDeltaForThirtyMinedBlocks = 20000; //Directly proportional to "minSuspicionDecreaseProportion"
+    private static final int minAccountableMillisecondDeltaForThirtyMinedBlocks = 0; //Directly proportional to "maxSuspicionDecreaseProportion"
 
-    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+    static final long DECAY_PERIOD_MILLIS = 10000L; //Suspicion and non-ore streak decrease period (the former 200 tick runnable)
+    static final int IDLE_DECAY_PERIODS = 20; //Consecutive decay periods at suspicion 0 after which the player is considered as no longer mining
 
     //General distance/time algorithm variables:
     private float suspicionLevel = 0.0f; //Level of suspicion for the player
 
-    float suspicionDecreaseAmount = -4; //How much "suspicionLevel" to reduce for the this MiningSession every "mainRunnableFrequency" in AntiXrayHeuristics.java. This value results from a calculation based on speed.
+    float suspicionDecreaseAmount = -4; //How much "suspicionLevel" to reduce for the this MiningSession every DECAY_PERIOD_MILLIS. This value results from a calculation based on speed, and is always negative.
 
-    private Material lastMinedOre = null; //Last mined Material ore name
+    private long lastDecayTime; //Time up to which decay has been applied (milliseconds, System.nanoTime() based, advances in whole periods)
 
-    private Location lastMinedOreLocation = null; //Last mined Material ore location
+    long scheduledExpiryTick = Long.MIN_VALUE; //SessionExpiryWheel tick this session is currently scheduled for
+
+    volatile long lastAccessTime; //Last time a block break updated this session (milliseconds, System.nanoTime() based). Read unlocked by SessionStore eviction
+
+    long quitExpiryTime = Long.MAX_VALUE; //Time this session expires at because its player quit (Long.MAX_VALUE while online)
+
+    private int lastMinedOre = -1; //Last mined ore Material ordinal (-1 for none)
+
+    private long lastMinedOreCoords; //Last mined ore block coordinates (packed, see PackBlockCoords), only valid if lastMinedOre != -1
 
     private int shortestDeltaTimeThirtyBlocksMined = Integer.MAX_VALUE; //Shortest delta time from 0 to 30 blocks mined (this value represents the speed at which the mining session owner is removing blocks)
 
-    private int lastThirtyBlocksTime; //Last time we reached 30 mined blocks
+    private long lastThirtyBlocksTime; //Last time we reached 30 mined blocks (milliseconds, System.nanoTime() based)
 
     private int thirtyBlockCounter = 0; //When this value reaches 30, "thirtyBlockTimer" is compared to "lowestTimeThirtyBlocksMined". If lower, "thirtyBlockTimer" replaces "lowestTimeThirtyBlocksMined"
 
@@ -33,19 +44,31 @@ class MiningSession { //Contains heuristics tracked per player
 
     public int minedNonOreBlocksStreak = 0; //Tracks how many non-ore blocks have been mined in streak.
 
-    public int foundAtZeroSuspicionStreak = 0; //Tracks how many times this mining session has been found at suspicion level 0 during Runnable tasks.
+    private int zeroSuspicionPeriods = 0; //Tracks how many consecutive decay periods this mining session has ended at suspicion level 0.
 
     //Mined blocks trail tracking algorithm variables:
-    private IntVector3[] minedBlocksTrailCoords = new IntVector3[10];
+    private final long[] minedBlocksTrailCoords; //Ring buffer of sampled mined block coordinates (packed, see PackBlockCoords)
     private int nextCoordsStorePos = 0; //Position where next mined block coordinates will be stored
+    private int storedTrailCoords = 0; //How many positions of the ring buffer hold valid coordinates
     private int counterSinceLastBlockCoordsStore = 0; //Counts how many blocks we've mined since last mined block coordinates storing
 
-    MiningSession(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main)
+    MiningSession(long nowMillis, int trailLength)
     {
-        this.mainClassAccess = main;
-        lastThirtyBlocksTime = (int)System.currentTimeMillis();
+        lastThirtyBlocksTime = nowMillis;
+        lastDecayTime = nowMillis;
+        lastAccessTime = nowMillis;
+        minedBlocksTrailCoords = new long[trailLength];
     }
 
+    //Block coordinates packing (X and Z in 26 bits, Y in 12 bits, same layout as vanilla BlockPos.asLong):
+    static long PackBlockCoords(int x, int y, int z)
+    {
+        return ((long) x & 0x3FFFFFFL) << 38 | ((long) z & 0x3FFFFFFL) << 12 | ((long) y & 0xFFFL);
+    }
+    static int UnpackX(long packed) { return (int) (packed >> 38); }
+    static int UnpackY(long packed) { return (int) (packed << 52 >> 52); }
+    static int UnpackZ(long packed) { return (int) (packed << 26 >> 38); }
+
     //General distance/time algorithm methods:
     public float GetSuspicionLevel() { return suspicionLevel; }
     public void SetSuspicionLevel(float l)
@@ -57,28 +80,88 @@ class MiningSession { //Contains heuristics tracked per player
         //Don't add suspicion if explosivesPlacedStreak above 4
         if(explosivesPlacedStreak <= 4) suspicionLevel += l;
     }
-    public void SelfSuspicionReducer() { suspicionLevel += suspicionDecreaseAmount; }
-    public void SetLastMinedOreData(Material m, Location l)
+
+    static long NowMillis() { return System.nanoTime() / 1000000L; } //Session clock
+
+    /**
+     * Applies the suspicion and non-ore streak decrease of every whole decay period elapsed since the last call, in
+     * closed form. Equivalent to running the old periodic decrease once per elapsed period.
+     */
+    public void Decay(long nowMillis, int nonOreStreakDecreaseAmount)
+    {
+        final long periods = (nowMillis - lastDecayTime) / DECAY_PERIOD_MILLIS;
+        if (periods <= 0) return;
+        lastDecayTime += periods * DECAY_PERIOD_MILLIS;
+
+        //Non-ore streak decreases linearly and stays at least 0:
+        minedNonOreBlocksStreak = (int) Math.max(0L, minedNonOreBlocksStreak + periods * nonOreStreakDecreaseAmount);
+
+        //Suspicion decreases linearly until it goes below 0 on some period, from there on it's clamped to 0 every period:
+        final long periodsToZero = PeriodsToZeroSuspicion();
+        if (periods < periodsToZero) {
+            suspicionLevel += periods * suspicionDecreaseAmount;
+            zeroSuspicionPeriods = 0;
+        } else {
+            suspicionLevel = 0f;
+            final long zeroPeriods = (periodsToZero == 1 ? zeroSuspicionPeriods : 0) + periods - periodsToZero + 1; //Streak only carries over if no period ended above 0
+            zeroSuspicionPeriods = (int) Math.min(zeroPeriods, Integer.MAX_VALUE);
+        }
+    }
+    private long PeriodsToZeroSuspicion() //Decay periods until the first one ending at suspicion 0
+    {
+        return (long) Math.floor(suspicionLevel / -suspicionDecreaseAmount) + 1;
+    }
+
+    /**True once the session spent IDLE_DECAY_PERIODS decay periods in a row at suspicion 0 (call Decay first)*/
+    public boolean IsIdle() { return zeroSuspicionPeriods >= IDLE_DECAY_PERIODS; }
+
+    /**True once the session became idle, went unused for idleTTLMillis (0 or less for no limit) or its player quit and didn't come back in time*/
+    public boolean IsExpired(long nowMillis, long idleTTLMillis)
+    {
+        return IsIdle() || (idleTTLMillis > 0 && nowMillis - lastAccessTime >= idleTTLMillis) || nowMillis >= quitExpiryTime;
+    }
+
+    /**When the session will expire if nothing touches it meanwhile (call Decay first)*/
+    public long ExpiryTimeMillis(long idleTTLMillis)
     {
-        lastMinedOre = m;
-        lastMinedOreLocation = l;
+        long expiry = Math.min(IdleTimeMillis(), quitExpiryTime);
+        if (idleTTLMillis > 0) expiry = Math.min(expiry, lastAccessTime + idleTTLMillis);
+        return expiry;
+    }
+
+    /**When the session will become idle if nothing raises its suspicion meanwhile (call Decay first)*/
+    public long IdleTimeMillis()
+    {
+        final long periodsToZero = PeriodsToZeroSuspicion();
+        final long periods = periodsToZero == 1 ? IDLE_DECAY_PERIODS - zeroSuspicionPeriods : periodsToZero - 1 + IDLE_DECAY_PERIODS;
+        return lastDecayTime + Math.max(0L, periods) * DECAY_PERIOD_MILLIS;
+    }
+    public void SetLastMinedOreData(int materialOrdinal, int x, int y, int z)
+    {
+        lastMinedOre = materialOrdinal;
+        lastMinedOreCoords = PackBlockCoords(x, y, z);
+    }
+    public void ResetLastMinedOreData() { lastMinedOre = -1; }
+    public int GetLastMinedOre() { return lastMinedOre; }
+    public double GetLastMinedOreDistance(int x, int y, int z) //Distance from last mined ore to the given block coordinates
+    {
+        double dx = UnpackX(lastMinedOreCoords) - x, dy = UnpackY(lastMinedOreCoords) - y, dz = UnpackZ(lastMinedOreCoords) - z;
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
     }
-    public Material GetLastMinedOre() { return lastMinedOre; }
-    public Location GetLastMinedOreLocation() { return lastMinedOreLocation; }
 
     //Time property update methods:
-    public void UpdateTimeAccountingProperties(Player p) //Updates properties based on time, and may also modify suspicion decrease amount based on them
+    public void UpdateTimeAccountingProperties(long nowMillis) //Updates properties based on time, and may also modify suspicion decrease amount based on them
     {
         thirtyBlockCounter++;
         if(thirtyBlockCounter >= 30)
         {
-            int thirtyBlockDeltaTime = ((int)System.currentTimeMillis() - lastThirtyBlocksTime); //Thirty block delta time in milliseconds
+            int thirtyBlockDeltaTime = (int) Math.min(nowMillis - lastThirtyBlocksTime, Integer.MAX_VALUE); //Thirty block delta time in milliseconds
 
             //Clamp 30 block delta time to max and min accountable millis:
-            if(thirtyBlockDeltaTime > mainClassAccess.maxAccountableMillisecondDeltaForThirtyMinedBlocks)
-                thirtyBlockDeltaTime = mainClassAccess.maxAccountableMillisecondDeltaForThirtyMinedBlocks;
-            else if(thirtyBlockDeltaTime < mainClassAccess.minAccountableMillisecondDeltaForThirtyMinedBlocks)
-                thirtyBlockDeltaTime = mainClassAccess.minAccountableMillisecondDeltaForThirtyMinedBlocks;
+            if(thirtyBlockDeltaTime > maxAccountableMillisecondDeltaForThirtyMinedBlocks)
+                thirtyBlockDeltaTime = maxAccountableMillisecondDeltaForThirtyMinedBlocks;
+            else if(thirtyBlockDeltaTime < minAccountableMillisecondDeltaForThirtyMinedBlocks)
+                thirtyBlockDeltaTime = minAccountableMillisecondDeltaForThirtyMinedBlocks;
 
             //Is this new delta shorter (hence 30 blocks where mined faster at this point) than the current shortest registered delta time?
             if(thirtyBlockDeltaTime < shortestDeltaTimeThirtyBlocksMined)
@@ -87,20 +170,19 @@ class MiningSession { //Contains heuristics tracked per player
 
                 //Correlate decrease amount to current shortest delta...
                 //Example formula for range conversion x in range [a,b] to y in range [c,d]: "y = (x - a) * ((d - c) / (b - a)) + c"
-                suspicionDecreaseAmount = (shortestDeltaTimeThirtyBlocksMined - mainClassAccess.minAccountableMillisecondDeltaForThirtyMinedBlocks) *
-                    ((mainClassAccess.minSuspicionDecreaseProportion - (mainClassAccess.maxSuspicionDecreaseProportion)) /
-                    (mainClassAccess.maxAccountableMillisecondDeltaForThirtyMinedBlocks - mainClassAccess.minAccountableMillisecondDeltaForThirtyMinedBlocks)) +
-                    (mainClassAccess.maxSuspicionDecreaseProportion);
+                suspicionDecreaseAmount = (shortestDeltaTimeThirtyBlocksMined - minAccountableMillisecondDeltaForThirtyMinedBlocks) *
+                    ((minSuspicionDecreaseProportion - (maxSuspicionDecreaseProportion)) /
+                    (maxAccountableMillisecondDeltaForThirtyMinedBlocks - minAccountableMillisecondDeltaForThirtyMinedBlocks)) +
+                    (maxSuspicionDecreaseProportion);
             }
             thirtyBlockCounter = 0;
-            lastThirtyBlocksTime = (int)System.currentTimeMillis();
+            lastThirtyBlocksTime = nowMillis;
 
             //Minimum suspicion decrease amount should be at (negative) least "absoluteMinimumSuspicionDecrease", else suspicion reduction is too slow. This prevents slow mining players from receiving fp's
-            if(suspicionDecreaseAmount > mainClassAccess.absoluteMinimumSuspicionDecrease) suspicionDecreaseAmount = mainClassAccess.absoluteMinimumSuspicionDecrease;
+            if(suspicionDecreaseAmount > absoluteMinimumSuspicionDecrease) suspicionDecreaseAmount = absoluteMinimumSuspicionDecrease;
 
             /*
             System.out.println("[AXH Debug]");
-            System.out.println("Player: " + p.getName());
             System.out.println("Decrease amount: " + suspicionDecreaseAmount);
             System.out.println("Suspicion level: " + suspicionLevel);
             System.out.println("--");
@@ -110,13 +192,20 @@ class MiningSession { //Contains heuristics tracked per player
 
     //Mined blocks trail tracking algorithm methods:
     public void IncreaseExplosivesPlaced(){ explosivesPlacedStreak++; }
-    public int GetLastBlockCoordsStoreCounter(){ return counterSinceLastBlockCoordsStore; }
-    public void CycleBlockCoordsStoreCounter(){ counterSinceLastBlockCoordsStore = (counterSinceLastBlockCoordsStore + 1) % 4; }
-    public void ResetBlockCoordsStoreCounter(){ counterSinceLastBlockCoordsStore = 0; }
-    public void CycleNextCoordsStorePos(){ nextCoordsStorePos = (nextCoordsStorePos + 1) % 10; }
-    public int GetNextCoordsStorePos(){ return nextCoordsStorePos; }
-    public IntVector3 GetMinedBlocksTrailArrayPos(int pos) { return minedBlocksTrailCoords[pos]; }
-    //void SetMinedBlocksTrailArrayPos(int pos, int x, int y, int z) { minedBlocksTrailCoords[pos] = new IntVector3(x, y, z); }
-    public void SetMinedBlocksTrailArrayPos(int pos, Location l) { minedBlocksTrailCoords[pos] = new IntVector3(l); }
-    public void ResetBlocksTrailArray() { Arrays.fill(minedBlocksTrailCoords, null); }
+    public void UpdateTrail(int x, int y, int z, int samplingStride) //Stores every "samplingStride"th mined block coordinates in the trail ring buffer
+    {
+        if (++counterSinceLastBlockCoordsStore < samplingStride) return;
+        counterSinceLastBlockCoordsStore = 0;
+        minedBlocksTrailCoords[nextCoordsStorePos] = PackBlockCoords(x, y, z);
+        if (++nextCoordsStorePos == minedBlocksTrailCoords.length) nextCoordsStorePos = 0;
+        if (storedTrailCoords < minedBlocksTrailCoords.length) storedTrailCoords++;
+    }
+    public int GetStoredTrailCoords(){ return storedTrailCoords; }
+    public long GetMinedBlocksTrailArrayPos(int pos) { return minedBlocksTrailCoords[pos]; } //Valid for pos < GetStoredTrailCoords()
+    public void ResetTrail() //Empties the trail (no need to clear the array, stored count bounds reads)
+    {
+        storedTrailCoords = 0;
+        nextCoordsStorePos = 0;
+        counterSinceLastBlockCoordsStore = 0;
+    }
 }
@@ -0,0 +1,112 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+/**
+ * How a mined block material feeds a MiningSession. Rules are stored in a flat array indexed by
+ * Material.ordinal() (see BuildTable), so classifying a broken block is a single array load.
+ */
+final class OreRule {
+
+    //Categories:
+    static final int CATEGORY_BASE = 0; //Common non-ore block (stone, netherrack...) that feeds the non-ore streak and trail
+    static final int CATEGORY_ORE = 1; //Ore that may add suspicion when found after enough non-ore blocks
+
+    //Biome classes an ore's weight can be reduced in:
+    static final int BIOME_NONE = 0;
+    static final int BIOME_GOLD_RICH = 1;
+    static final int BIOME_EMERALD_RICH = 1 << 1;
+
+    final int category;
+    final float weight; //Base suspicion weight
+    final float extraWeightMultiplier; //Applied to weight when the ore was found sooner than "usualEncounterThreshold" blocks
+    final float biomeReducer; //Final weight divisor when mined in a biome of reducerBiome class
+    final int reducerBiome; //BIOME_* class where biomeReducer applies, BIOME_NONE for no reduction
+
+    private static final OreRule BASE = new OreRule(CATEGORY_BASE, 0f, 1f, 1f, BIOME_NONE);
+
+    OreRule(int category, float weight, float extraWeightMultiplier, float biomeReducer, int reducerBiome)
+    {
+        this.category = category;
+        this.weight = weight;
+        this.extraWeightMultiplier = extraWeightMultiplier;
+        this.biomeReducer = biomeReducer;
+        this.reducerBiome = reducerBiome;
+    }
+
+    /**
+     * Builds the Material.ordinal() indexed rule table. Null entries are irrelevant blocks, as are ores with a 0 weight.
+     *
+     * @param config Configuration to read "CustomBaseBlocks" and "CustomOreRules" from
+     * @param settings Settings snapshot under construction holding the vanilla ore weights
+     */
+    static OreRule[] BuildTable(FileConfiguration config, AxhSettings settings)
+    {
+        OreRule[] table = new OreRule[Material.values().length];
+
+        //Relevant non-ores:
+        Put(table, BASE, Material.STONE, Material.DEEPSLATE, Material.GRANITE, Material.DIORITE, Material.ANDESITE,
+                Material.TUFF, Material.NETHERRACK, Material.BASALT, Material.BLACKSTONE);
+
+        //Vanilla ores:
+        PutOre(table, settings.coalWeight, 1f, 1f, BIOME_NONE, Material.COAL_ORE, Material.DEEPSLATE_COAL_ORE);
+        PutOre(table, settings.redstoneWeight, 1f, 1f, BIOME_NONE, Material.REDSTONE_ORE, Material.DEEPSLATE_REDSTONE_ORE);
+        PutOre(table, settings.ironWeight, 1f, 1f, BIOME_NONE, Material.IRON_ORE, Material.DEEPSLATE_IRON_ORE);
+        PutOre(table, settings.goldWeight, 1f, settings.finalGoldWeightDivisionReducer, BIOME_GOLD_RICH, Material.GOLD_ORE, Material.DEEPSLATE_GOLD_ORE);
+        PutOre(table, settings.lapisWeight, 1f, 1f, BIOME_NONE, Material.LAPIS_ORE, Material.DEEPSLATE_LAPIS_ORE);
+        PutOre(table, settings.diamondWeight, 1.5f, 1f, BIOME_NONE, Material.DIAMOND_ORE, Material.DEEPSLATE_DIAMOND_ORE);
+        PutOre(table, settings.emeraldWeight, 1.5f, settings.finalEmeraldWeightDivisionReducer, BIOME_EMERALD_RICH, Material.EMERALD_ORE, Material.DEEPSLATE_EMERALD_ORE);
+        PutOre(table, settings.copperWeight, 1f, 1f, BIOME_NONE, Material.COPPER_ORE, Material.DEEPSLATE_COPPER_ORE);
+        PutOre(table, settings.quartzWeight, 1f, 1f, BIOME_NONE, Material.NETHER_QUARTZ_ORE);
+        PutOre(table, settings.netherGoldWeight, 1f, 1f, BIOME_NONE, Material.NETHER_GOLD_ORE);
+        PutOre(table, settings.ancientDebrisWeight, 1.5f, 1f, BIOME_NONE, Material.ANCIENT_DEBRIS);
+
+        //Configured base blocks, after the vanilla ores so an ore listed here counts as base (even with a 0 weight):
+        for (String name : config.getStringList("CustomBaseBlocks")) {
+            Material m = Material.matchMaterial(name);
+            if (m != null) table[m.ordinal()] = BASE;
+            else System.out.println("[AntiXrayHeuristics] Unknown material in CustomBaseBlocks: " + name);
+        }
+
+        //Configured ores (may also override vanilla ones):
+        ConfigurationSection custom = config.getConfigurationSection("CustomOreRules");
+        if (custom != null) {
+            for (String name : custom.getKeys(false)) {
+                Material m = Material.matchMaterial(name);
+                ConfigurationSection rule = custom.getConfigurationSection(name);
+                if (m == null || rule == null) {
+                    System.out.println("[AntiXrayHeuristics] Ignoring invalid CustomOreRules entry: " + name);
+                    continue;
+                }
+                int reducerBiome;
+                switch (rule.getString("ReducerBiome", "NONE").toUpperCase()) {
+                    case "GOLD_RICH": reducerBiome = BIOME_GOLD_RICH; break;
+                    case "EMERALD_RICH": reducerBiome = BIOME_EMERALD_RICH; break;
+                    default: reducerBiome = BIOME_NONE; break;
+                }
+                PutOre(table, (float) rule.getDouble("Weight"), (float) rule.getDouble("ExtraWeightMultiplier", 1.0),
+                        (float) rule.getDouble("BiomeReducer", 1.0), reducerBiome, m);
+            }
+        }
+
+        return table;
+    }
+
+    private static void Put(OreRule[] table, OreRule rule, Material... materials)
+    {
+        for (Material m : materials) table[m.ordinal()] = rule;
+    }
+
+    private static void PutOre(OreRule[] table, float weight, float extraWeightMultiplier, float biomeReducer, int reducerBiome, Material... materials)
+    {
+        //Set to 0 to ignore (and a 0 reducer would just divide by zero):
+        OreRule rule = weight != 0f ? new OreRule(CATEGORY_ORE, weight, extraWeightMultiplier, biomeReducer != 0f ? biomeReducer : 1f, reducerBiome) : null;
+        Put(table, rule, materials);
+    }
+}
@@ -12,7 +12,7 @@ class PlaceholderManager {
 
     public static String SubstitutePlayerNameAndColorCodePlaceholders(String toReplace, String player)
     {
-        toReplace = toReplace.replaceAll("\\{PlayerName}", player);
+        toReplace = toReplace.replace("{PlayerName}", player);
         toReplace = ChatColor.translateAlternateColorCodes('&', toReplace);
 
         return toReplace;
@@ -20,8 +20,8 @@ class PlaceholderManager {
 
     public static String SubstitutePlayerNameAndHandleTimesPlaceholders(String toReplace, String player, String handleTimes)
     {
-        toReplace = toReplace.replaceAll("\\{PlayerName}", player);
-        toReplace = toReplace.replaceAll("\\{TimesDetected}", handleTimes);
+        toReplace = toReplace.replace("{PlayerName}", player);
+        toReplace = toReplace.replace("{TimesDetected}", handleTimes);
 
         return toReplace;
     }
@@ -45,7 +45,15 @@ class PlaceholderManager {
 
     public static String SubstituteXrayerSlotAndColorCodePlaceholders(String toReplace, int slot)
     {
-        toReplace = toReplace.replaceAll("\\{Slot}", Integer.toString(slot));
+        toReplace = toReplace.replace("{Slot}", Integer.toString(slot));
+        toReplace = ChatColor.translateAlternateColorCodes('&', toReplace);
+
+        return toReplace;
+    }
+
+    public static String SubstituteVaultQueryAndColorCodePlaceholders(String toReplace, String sortMode, String nameFilter)
+    {
+        toReplace = toReplace.replace("{SortMode}", sortMode).replace("{NameFilter}", nameFilter);
         toReplace = ChatColor.translateAlternateColorCodes('&', toReplace);
 
         return toReplace;
@@ -55,10 +63,8 @@ class PlaceholderManager {
     {
         for(int i = 0; i < toReplace.size(); i++)
         {
-            toReplace.set(i, toReplace.get(i).replaceAll("\\{HandledTimesAmount}", handledTimesAmount));
-            toReplace.set(i, toReplace.get(i).replaceAll("\\{FirstTimeDetected}", firstHandleTime));
-            toReplace.set(i, toReplace.get(i).replaceAll("\\{LastSeenTime}", lastSeenTime));
-            toReplace.set(i, ChatColor.translateAlternateColorCodes('&', toReplace.get(i)));
+            String line = toReplace.get(i).replace("{HandledTimesAmount}", handledTimesAmount).replace("{FirstTimeDetected}", firstHandleTime).replace("{LastSeenTime}", lastSeenTime); //Literal, no regex
+            toReplace.set(i, ChatColor.translateAlternateColorCodes('&', line));
         }
 
         return toReplace;
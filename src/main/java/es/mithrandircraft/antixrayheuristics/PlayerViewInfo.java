@@ -7,11 +7,14 @@ package es.mithrandircraft.antixrayheuristics;
 class PlayerViewInfo {
     public int page; //Page Player is on
 
+    public XrayerQuery query; //Sort and name filter of the vault listing Player is viewing
+
     public String xrayerInvUUID; //Current or last viewed xrayer vault's Player UUID
 
-    PlayerViewInfo(int pag)
+    PlayerViewInfo(int pag, XrayerQuery qry)
     {
         page = pag;
+        query = qry;
         xrayerInvUUID = null;
     }
 }
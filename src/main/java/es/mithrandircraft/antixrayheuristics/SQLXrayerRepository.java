@@ -0,0 +1,651 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.bukkit.Bukkit;
+
+import java.io.File;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Xrayers table on a MySQL server, or on an embedded SQLite database file ("data.db") in the plugin folder. Both share
+ * the schema and queries, except for the upsert and registry purge statements. Belongings live in their own table, keyed
+ * by their content hash and reference counted, so xrayer rows stay small and equal belongings are stored once. The vault's
+ * sort orders and name search are served by indexes on the sorted columns, ties broken by UUID, so any page of any listing
+ * is an index range scan.
+ */
+final class SQLXrayerRepository implements XrayerRepository {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+    private final boolean embedded; //SQLite file in the plugin folder instead of a MySQL server
+
+    private BasicDataSource dataSource; //Stores a pool of sql connections
+
+    SQLXrayerRepository(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main, boolean embedded)
+    {
+        this.mainClassAccess = main;
+        this.embedded = embedded;
+    }
+
+    //------------------ LIFECYCLE ------------------
+
+    @Override
+    public void Open()
+    {
+        if (embedded) InitializeEmbeddedDataSource();
+        else InitializeDataSource();
+        if (Bukkit.isPrimaryThread()) Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, this::CreateTableIfNotExists);
+        else CreateTableIfNotExists(); //Opened by a background task (startup, migrations), which writes right after
+    }
+
+    @Override
+    public void Close()
+    {
+        try {
+            dataSource.close();
+        } catch (SQLException e) {
+            System.err.print(e);
+        }
+    }
+
+    private void InitializeDataSource()
+    {
+        BasicDataSource basicDataSource = new BasicDataSource();
+
+        if(!mainClassAccess.getConfig().getString("SQLDriverClassName").equals(""))
+            basicDataSource.setDriverClassName(mainClassAccess.getConfig().getString("SQLDriverClassName"));
+        basicDataSource.setUsername(mainClassAccess.getConfig().getString("SQLUsername"));
+        basicDataSource.setPassword(mainClassAccess.getConfig().getString("SQLPassword"));
+        basicDataSource.setUrl("jdbc:mysql://" + mainClassAccess.getConfig().getString("SQLHost") + ":" + mainClassAccess.getConfig().getString("SQLPort") + "/" + mainClassAccess.getConfig().getString("SQLDatabaseName") + "?useSSL=false");
+        basicDataSource.setMaxActive(mainClassAccess.getConfig().getInt("SQLMaxActiveConnections"));
+        basicDataSource.setTestOnBorrow(true);
+        basicDataSource.setValidationQuery("SELECT 1");
+        basicDataSource.setPoolPreparedStatements(true); //Statements are reused per pooled connection instead of prepared on every query
+        basicDataSource.setMaxOpenPreparedStatements(mainClassAccess.getConfig().getInt("SQLMaxCachedStatements", 32));
+
+        dataSource = basicDataSource;
+    }
+    private void InitializeEmbeddedDataSource() //SQLite (bundled with the server) database at the plugin's data folder
+    {
+        mainClassAccess.getDataFolder().mkdirs();
+
+        BasicDataSource basicDataSource = new BasicDataSource();
+        basicDataSource.setDriverClassName("org.sqlite.JDBC");
+        basicDataSource.setUrl("jdbc:sqlite:" + new File(mainClassAccess.getDataFolder(), "data.db").getAbsolutePath());
+        basicDataSource.setMaxActive(4); //WAL lets readers run alongside the single writer, more connections would only wait on it
+        basicDataSource.setConnectionInitSqls(Arrays.asList(
+                "PRAGMA journal_mode=WAL",
+                "PRAGMA synchronous=NORMAL", //Durable across crashes of the server in WAL mode, only a power loss may drop the last commits
+                "PRAGMA busy_timeout=5000")); //Wait for the writer instead of failing with SQLITE_BUSY
+        basicDataSource.setPoolPreparedStatements(true);
+
+        dataSource = basicDataSource;
+    }
+
+    //Creates the Xrayers and XrayerBelongings tables and the vault's indexes, upgrading Xrayers tables written by older
+    //versions (belongings inside rows, first handle times as text, no player columns)
+    private void CreateTableIfNotExists()
+    {
+        try (java.sql.Connection cn = dataSource.getConnection()) {
+            try (PreparedStatement create = cn.prepareStatement("CREATE TABLE IF NOT EXISTS Xrayers(UUID VARCHAR(36) NOT NULL, Handled INT NOT NULL, FirstHandled BIGINT NOT NULL, HandleLocation VARCHAR(128) NOT NULL, BelongingsHash CHAR(64) NULL, " + NameColumn() + ", LastSeen BIGINT NOT NULL DEFAULT 0, PRIMARY KEY(UUID))")) {
+                create.executeUpdate();
+            }
+            //Content addressed belongings, shared by every xrayer carrying the same ones:
+            try (PreparedStatement create = cn.prepareStatement("CREATE TABLE IF NOT EXISTS XrayerBelongings(Hash CHAR(64) NOT NULL, RefCount INT NOT NULL, Data " + (embedded ? "BLOB" : "MEDIUMBLOB") + " NOT NULL, PRIMARY KEY(Hash))")) {
+                create.executeUpdate();
+            }
+            if (embedded) {
+                //Rows are small now, the covering index older versions created only slows down writes (and covers FirstHandleTime, dropped below):
+                try (PreparedStatement drop = cn.prepareStatement("DROP INDEX IF EXISTS XrayersBase")) {
+                    drop.executeUpdate();
+                }
+            }
+            if (HasColumn(cn, "Belongings")) MoveInlineBelongings(cn);
+            if (HasColumn(cn, "FirstHandleTime")) ConvertHandleTimes(cn);
+            if (!HasColumn(cn, "Name")) AddColumn(cn, NameColumn());
+            if (!HasColumn(cn, "LastSeen")) AddColumn(cn, "LastSeen BIGINT NOT NULL DEFAULT 0");
+            //Sort orders and name search, UUID breaks ties so keyset pages are read straight off the indexes:
+            CreateIndex(cn, "XrayersHandled", "Handled, UUID");
+            CreateIndex(cn, "XrayersFirstHandled", "FirstHandled, UUID");
+            CreateIndex(cn, "XrayersLastSeen", "LastSeen, UUID");
+            CreateIndex(cn, "XrayersName", "Name");
+            //Garbage left by an interrupted registry purge:
+            try (PreparedStatement sweep = cn.prepareStatement("DELETE FROM XrayerBelongings WHERE Hash NOT IN (SELECT BelongingsHash FROM Xrayers WHERE BelongingsHash IS NOT NULL)")) {
+                sweep.executeUpdate();
+            }
+        } catch (SQLException e) {
+            System.err.print(e);
+        }
+    }
+
+    private static boolean HasColumn(java.sql.Connection cn, String column) throws SQLException
+    {
+        try (ResultSet columns = cn.getMetaData().getColumns(cn.getCatalog(), null, "Xrayers", column)) {
+            return columns.next();
+        }
+    }
+
+    private String NameColumn() //Compared case insensitively for name search (MySQL's default collations already are)
+    {
+        return embedded ? "Name VARCHAR(16) COLLATE NOCASE NULL" : "Name VARCHAR(16) NULL";
+    }
+
+    private static void AddColumn(java.sql.Connection cn, String definition) throws SQLException
+    {
+        try (PreparedStatement alter = cn.prepareStatement("ALTER TABLE Xrayers ADD COLUMN " + definition)) {
+            alter.executeUpdate();
+        }
+    }
+
+    private static void CreateIndex(java.sql.Connection cn, String name, String columns) throws SQLException //Unless it exists (MySQL has no CREATE INDEX IF NOT EXISTS)
+    {
+        try (ResultSet indexes = cn.getMetaData().getIndexInfo(cn.getCatalog(), null, "Xrayers", false, false)) {
+            while (indexes.next()) {
+                if (name.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) return;
+            }
+        }
+        try (PreparedStatement create = cn.prepareStatement("CREATE INDEX " + name + " ON Xrayers(" + columns + ")")) {
+            create.executeUpdate();
+        }
+    }
+
+    private void MoveInlineBelongings(java.sql.Connection cn) throws SQLException //Older versions stored belongings inside each Xrayers row
+    {
+        if (!HasColumn(cn, "BelongingsHash")) AddColumn(cn, "BelongingsHash CHAR(64) NULL");
+        while (true) {
+            List<String> uuids = new ArrayList<>();
+            List<byte[]> belongings = new ArrayList<>();
+            try (PreparedStatement query = cn.prepareStatement("SELECT UUID, Belongings FROM Xrayers WHERE Belongings IS NOT NULL LIMIT 100");
+                 ResultSet result = query.executeQuery()) {
+                while (result.next()) {
+                    uuids.add(result.getString(1));
+                    belongings.add(result.getBytes(2)); //Legacy text is kept byte for byte
+                }
+            }
+            if (uuids.isEmpty()) break;
+            for (int i = 0; i < uuids.size(); i++) {
+                final String uuid = uuids.get(i);
+                final byte[] data = belongings.get(i);
+                final String hash = BelongingsCodec.Hash(data);
+                InTransaction(cn, () -> { //Moved rows aren't selected again, so an interrupted move just carries on next start
+                    AddReference(cn, hash, data);
+                    try (PreparedStatement update = cn.prepareStatement("UPDATE Xrayers SET BelongingsHash = ?, Belongings = NULL WHERE UUID = ?")) {
+                        update.setString(1, hash);
+                        update.setString(2, uuid);
+                        update.executeUpdate();
+                    }
+                    return null;
+                });
+            }
+        }
+        try (PreparedStatement alter = cn.prepareStatement("ALTER TABLE Xrayers DROP COLUMN Belongings")) {
+            alter.executeUpdate();
+        }
+    }
+
+    //Older versions stored first handle times as "yyyy/MM/dd HH:mm:ss" text, which neither sorts by time nor indexes well.
+    //Rows are converted to epoch millis in UUID order, and the text column dropped at the end: an interrupted conversion
+    //just converts every row again on next start. Storage only opens once it's done, detections are held until then.
+    private void ConvertHandleTimes(java.sql.Connection cn) throws SQLException
+    {
+        if (!HasColumn(cn, "FirstHandled")) AddColumn(cn, "FirstHandled BIGINT NOT NULL DEFAULT 0");
+        String cursor = "";
+        while (true) {
+            List<String> uuids = new ArrayList<>();
+            List<String> times = new ArrayList<>();
+            try (PreparedStatement query = cn.prepareStatement("SELECT UUID, FirstHandleTime FROM Xrayers WHERE UUID > ? ORDER BY UUID LIMIT 500")) {
+                query.setString(1, cursor);
+                try (ResultSet result = query.executeQuery()) {
+                    while (result.next()) {
+                        uuids.add(result.getString(1));
+                        times.add(result.getString(2));
+                    }
+                }
+            }
+            if (uuids.isEmpty()) break;
+            InTransaction(cn, () -> {
+                try (PreparedStatement update = cn.prepareStatement("UPDATE Xrayers SET FirstHandled = ? WHERE UUID = ?")) {
+                    for (int i = 0; i < uuids.size(); i++) {
+                        update.setLong(1, Xrayer.ParseTime(times.get(i)));
+                        update.setString(2, uuids.get(i));
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+                return null;
+            });
+            cursor = uuids.get(uuids.size() - 1);
+        }
+        try (PreparedStatement alter = cn.prepareStatement("ALTER TABLE Xrayers DROP COLUMN FirstHandleTime")) {
+            alter.executeUpdate();
+        }
+    }
+
+    //------------------ OPERATIONS ------------------
+
+    //Adds the handles to Handled of the xrayers already stored in one transaction (a single commit for the whole batch).
+    //Each stored xrayer is a single UPDATE that hands back the new Handled value in the same round trip (RETURNING on
+    //SQLite, LAST_INSERT_ID(expr) as the generated key on MySQL), and its record (location, belongings) is never built.
+    //The records of the rest are built next, outside any transaction, and stored in a second one. They're upserted, in
+    //case another server stored them meanwhile, and their belongings get referenced. An xrayer whose record can't be
+    //built is left at -1 without failing the others.
+    @Override
+    public int[] StoreHandles(List<String> uuids, int[] handles, List<Supplier<Xrayer>> newXrayers)
+    {
+        final int[] timesHandled = new int[uuids.size()];
+        Arrays.fill(timesHandled, -1);
+        try (java.sql.Connection cn = dataSource.getConnection();
+             PreparedStatement update = embedded
+                     ? cn.prepareStatement("UPDATE Xrayers SET Handled = Handled + ? WHERE UUID = ? RETURNING Handled")
+                     : cn.prepareStatement("UPDATE Xrayers SET Handled = LAST_INSERT_ID(Handled + ?) WHERE UUID = ?", Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement upsert = embedded
+                     ? cn.prepareStatement("INSERT INTO Xrayers(UUID, Handled, FirstHandled, HandleLocation, BelongingsHash, Name, LastSeen) VALUES(?,?,?,?,?,?,?) ON CONFLICT(UUID) DO UPDATE SET Handled = Handled + excluded.Handled RETURNING Handled")
+                     : cn.prepareStatement("INSERT INTO Xrayers(UUID, Handled, FirstHandled, HandleLocation, BelongingsHash, Name, LastSeen) VALUES(?,?,?,?,?,?,?) ON DUPLICATE KEY UPDATE Handled = LAST_INSERT_ID(Handled + VALUES(Handled))", Statement.RETURN_GENERATED_KEYS)) {
+            InTransaction(cn, () -> {
+                for (int i = 0; i < uuids.size(); i++) timesHandled[i] = AddHandles(update, uuids.get(i), handles[i]);
+                return null;
+            });
+
+            //Only built for xrayers not stored yet, and before the transaction opens (it may encode a whole inventory):
+            final Xrayer[] xrayers = new Xrayer[uuids.size()];
+            boolean anyNew = false;
+            for (int i = 0; i < uuids.size(); i++) {
+                if (timesHandled[i] >= 0) continue;
+                try {
+                    xrayers[i] = newXrayers.get(i).get();
+                    anyNew = true;
+                } catch (RuntimeException e) {
+                    System.err.println("[AntiXrayHeuristics] Unable to store xrayer " + uuids.get(i) + ": " + e); //Stays -1
+                }
+            }
+            if (!anyNew) return timesHandled;
+
+            final int[] stored = new int[uuids.size()];
+            Arrays.fill(stored, -1);
+            try {
+                InTransaction(cn, () -> {
+                    for (int i = 0; i < uuids.size(); i++) {
+                        final Xrayer xrayer = xrayers[i];
+                        if (xrayer == null) continue;
+                        final String hash = xrayer.Belongings != null ? BelongingsCodec.Hash(xrayer.Belongings) : null;
+                        upsert.setString(1, uuids.get(i));
+                        upsert.setInt(2, handles[i]);
+                        upsert.setLong(3, Xrayer.ParseTime(xrayer.FirstHandleTime));
+                        upsert.setString(4, xrayer.HandleLocation);
+                        upsert.setString(5, hash);
+                        upsert.setString(6, xrayer.Name);
+                        upsert.setLong(7, xrayer.LastSeen);
+
+                        stored[i] = handles[i];
+                        boolean inserted;
+                        if (embedded) { //SQLite upsert, returning the stored Handled value directly
+                            try (ResultSet result = upsert.executeQuery()) {
+                                if (result.next()) stored[i] = result.getInt(1);
+                            }
+                            inserted = stored[i] == handles[i]; //Updates leave more
+                        }
+                        else {
+                            inserted = upsert.executeUpdate() == 1; //2 affected rows = existing row updated, 1 = inserted
+                            if (!inserted) {
+                                try (ResultSet keys = upsert.getGeneratedKeys()) {
+                                    if (keys.next()) stored[i] = keys.getInt(1);
+                                }
+                            }
+                        }
+                        if (inserted && hash != null) AddReference(cn, hash, xrayer.Belongings);
+                    }
+                    return null;
+                });
+            } catch (SQLException e) { //The handles added to stored xrayers are committed already
+                System.err.print(e);
+                return timesHandled;
+            }
+            for (int i = 0; i < uuids.size(); i++) if (xrayers[i] != null) timesHandled[i] = stored[i];
+            return timesHandled;
+        } catch (SQLException e) {
+            System.err.print(e);
+            Arrays.fill(timesHandled, -1);
+            return timesHandled;
+        }
+    }
+
+    //Adds handles to a stored xrayer through the prepared "Handled += ?" update, in one round trip.
+    //Returns its new Handled value, or -1 if it isn't stored.
+    private int AddHandles(PreparedStatement update, String uuid, int handles) throws SQLException
+    {
+        update.setInt(1, handles);
+        update.setString(2, uuid);
+        if (embedded) {
+            try (ResultSet result = update.executeQuery()) {
+                return result.next() ? result.getInt(1) : -1;
+            }
+        }
+        if (update.executeUpdate() == 0) return -1;
+        try (ResultSet keys = update.getGeneratedKeys()) {
+            return keys.next() ? keys.getInt(1) : -1;
+        }
+    }
+
+    //Keyset paging over the query's index: sorted pages continue past the last row's (key, UUID), descending, so any page
+    //costs the same. A name prefix is a LIKE 'prefix%' range over the Name index, sorted afterwards (prefixes match few rows).
+    @Override
+    public List<Xrayer> GetBasePage(XrayerQuery query, Xrayer after, int limit)
+    {
+        final String key = SortColumn(query.sort);
+        StringBuilder sql = new StringBuilder("SELECT UUID, Handled, FirstHandled, Name, LastSeen FROM Xrayers WHERE 1=1");
+        if (query.namePrefix != null) sql.append(" AND Name LIKE ? ESCAPE '!'");
+        if (key == null) sql.append(" AND UUID > ? ORDER BY UUID");
+        else {
+            if (after != null) sql.append(" AND (").append(key).append(" < ? OR (").append(key).append(" = ? AND UUID < ?))");
+            sql.append(" ORDER BY ").append(key).append(" DESC, UUID DESC");
+        }
+        sql.append(" LIMIT ?");
+
+        try (java.sql.Connection cn = dataSource.getConnection();
+             PreparedStatement statement = cn.prepareStatement(sql.toString())) {
+            int parameter = 1;
+            if (query.namePrefix != null) statement.setString(parameter++, NamePattern(query.namePrefix));
+            if (key == null) statement.setString(parameter++, after != null ? after.UUID : "");
+            else if (after != null) {
+                final long afterKey = query.SortKey(after);
+                statement.setLong(parameter++, afterKey);
+                statement.setLong(parameter++, afterKey);
+                statement.setString(parameter++, after.UUID);
+            }
+            statement.setInt(parameter, limit);
+            try (ResultSet result = statement.executeQuery()) {
+                List<Xrayer> xrayers = new ArrayList<>(limit);
+                while(result.next()) xrayers.add(ReadBase(result));
+                return xrayers;
+            }
+        } catch (SQLException e) {
+            System.err.print(e);
+            return null;
+        }
+    }
+
+    @Override
+    public int Count(XrayerQuery query)
+    {
+        try (java.sql.Connection cn = dataSource.getConnection();
+             PreparedStatement statement = cn.prepareStatement(query.namePrefix != null ? "SELECT COUNT(*) FROM Xrayers WHERE Name LIKE ? ESCAPE '!'" : "SELECT COUNT(*) FROM Xrayers")) {
+            if (query.namePrefix != null) statement.setString(1, NamePattern(query.namePrefix));
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            System.err.print(e);
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean UpdatePlayer(String uuid, String name, long lastSeen)
+    {
+        try (java.sql.Connection cn = dataSource.getConnection();
+             PreparedStatement update = cn.prepareStatement("UPDATE Xrayers SET Name = ?, LastSeen = ? WHERE UUID = ?")) {
+            update.setString(1, name);
+            update.setLong(2, lastSeen);
+            update.setString(3, uuid);
+
+            return update.executeUpdate() == 1;
+        } catch (SQLException e) {
+            System.err.print(e);
+            return false;
+        }
+    }
+
+    @Override
+    public List<Xrayer> GetFullPage(String afterUUID, int limit)
+    {
+        try (java.sql.Connection cn = dataSource.getConnection();
+             PreparedStatement query = cn.prepareStatement("SELECT x.UUID, x.Handled, x.FirstHandled, x.Name, x.LastSeen, x.HandleLocation, b.Data FROM Xrayers x LEFT JOIN XrayerBelongings b ON b.Hash = x.BelongingsHash WHERE x.UUID > ? ORDER BY x.UUID LIMIT ?")) {
+            query.setString(1, afterUUID != null ? afterUUID : "");
+            query.setInt(2, limit);
+            try (ResultSet result = query.executeQuery()) {
+                List<Xrayer> xrayers = new ArrayList<>(limit);
+                while(result.next()) {
+                    Xrayer xrayer = ReadBase(result);
+                    xrayer.HandleLocation = result.getString("HandleLocation");
+                    xrayer.Belongings = result.getBytes("Data");
+                    xrayers.add(xrayer);
+                }
+                return xrayers;
+            }
+        } catch (SQLException e) {
+            System.err.print(e);
+            return null;
+        }
+    }
+
+    //Replaces the xrayers in one transaction: rows already stored under their UUIDs are deleted first (releasing their
+    //belongings), then rows and belongings references are inserted as JDBC batches.
+    @Override
+    public boolean PutAll(List<Xrayer> xrayers)
+    {
+        if (xrayers.isEmpty()) return true;
+        String first = xrayers.get(0).UUID, last = first;
+        HashSet<String> uuids = new HashSet<>();
+        for (Xrayer xrayer : xrayers) {
+            uuids.add(xrayer.UUID);
+            if (xrayer.UUID.compareTo(first) < 0) first = xrayer.UUID;
+            if (xrayer.UUID.compareTo(last) > 0) last = xrayer.UUID;
+        }
+        final String from = first, to = last;
+        try (java.sql.Connection cn = dataSource.getConnection()) {
+            InTransaction(cn, () -> {
+                //Stored ones, found with a single range query over the primary key:
+                List<String> storedHashes = new ArrayList<>();
+                try (PreparedStatement query = cn.prepareStatement(embedded ? "SELECT UUID, BelongingsHash FROM Xrayers WHERE UUID >= ? AND UUID <= ?" : "SELECT UUID, BelongingsHash FROM Xrayers WHERE UUID >= ? AND UUID <= ? FOR UPDATE");
+                     PreparedStatement purge = cn.prepareStatement("DELETE FROM Xrayers WHERE UUID = ?")) {
+                    query.setString(1, from);
+                    query.setString(2, to);
+                    try (ResultSet result = query.executeQuery()) {
+                        while (result.next()) {
+                            if (!uuids.contains(result.getString(1))) continue;
+                            purge.setString(1, result.getString(1));
+                            purge.addBatch();
+                            if (result.getString(2) != null) storedHashes.add(result.getString(2));
+                        }
+                    }
+                    purge.executeBatch();
+                }
+                for (String hash : storedHashes) DropReference(cn, hash);
+
+                try (PreparedStatement insert = cn.prepareStatement("INSERT INTO Xrayers(UUID, Handled, FirstHandled, HandleLocation, BelongingsHash, Name, LastSeen) VALUES(?,?,?,?,?,?,?)");
+                     PreparedStatement reference = cn.prepareStatement(embedded
+                             ? "INSERT INTO XrayerBelongings(Hash, RefCount, Data) VALUES(?,1,?) ON CONFLICT(Hash) DO UPDATE SET RefCount = RefCount + 1"
+                             : "INSERT INTO XrayerBelongings(Hash, RefCount, Data) VALUES(?,1,?) ON DUPLICATE KEY UPDATE RefCount = RefCount + 1")) {
+                    boolean referenced = false;
+                    for (Xrayer xrayer : xrayers) {
+                        final String hash = xrayer.Belongings != null ? BelongingsCodec.Hash(xrayer.Belongings) : null;
+                        insert.setString(1, xrayer.UUID);
+                        insert.setInt(2, xrayer.Handled);
+                        insert.setLong(3, Xrayer.ParseTime(xrayer.FirstHandleTime));
+                        insert.setString(4, xrayer.HandleLocation);
+                        insert.setString(5, hash);
+                        insert.setString(6, xrayer.Name);
+                        insert.setLong(7, xrayer.LastSeen);
+                        insert.addBatch();
+                        if (hash == null) continue;
+                        reference.setString(1, hash);
+                        reference.setBytes(2, xrayer.Belongings);
+                        reference.addBatch();
+                        referenced = true;
+                    }
+                    insert.executeBatch();
+                    if (referenced) reference.executeBatch();
+                }
+                return null;
+            });
+            return true;
+        } catch (SQLException e) {
+            System.err.print(e);
+            return false;
+        }
+    }
+
+    @Override
+    public void Sync() {} //Every write is a committed transaction already
+
+    @Override
+    public byte[] GetBelongings(String uuid) { return SelectColumn("SELECT b.Data FROM Xrayers x JOIN XrayerBelongings b ON b.Hash = x.BelongingsHash WHERE x.UUID = ?", uuid, result -> result.getBytes(1)); }
+
+    @Override
+    public String GetHandleLocation(String uuid) { return SelectColumn("SELECT HandleLocation FROM Xrayers WHERE UUID = ?", uuid, result -> result.getString(1)); }
+
+    private <T> T SelectColumn(String sql, String uuid, ColumnReader<T> reader) //Single column of an xrayer's row, null if not found
+    {
+        try (java.sql.Connection cn = dataSource.getConnection();
+             PreparedStatement query = cn.prepareStatement(sql)) {
+            query.setString(1, uuid);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next() ? reader.Read(result) : null;
+            }
+        } catch (SQLException e) {
+            System.err.print(e);
+            return null;
+        }
+    }
+
+    private interface ColumnReader<T> {
+        T Read(ResultSet result) throws SQLException;
+    }
+
+    @Override
+    public boolean ReplaceBelongings(String uuid, byte[] expected, byte[] replacement)
+    {
+        final String expectedHash = BelongingsCodec.Hash(expected);
+        final String hash = BelongingsCodec.Hash(replacement);
+        try (java.sql.Connection cn = dataSource.getConnection()) {
+            return InTransaction(cn, () -> {
+                try (PreparedStatement update = cn.prepareStatement("UPDATE Xrayers SET BelongingsHash = ? WHERE UUID = ? AND BelongingsHash = ?")) {
+                    update.setString(1, hash);
+                    update.setString(2, uuid);
+                    update.setString(3, expectedHash);
+
+                    if (update.executeUpdate() != 1) return false;
+                }
+                AddReference(cn, hash, replacement);
+                DropReference(cn, expectedHash);
+                return true;
+            });
+        } catch (SQLException e) {
+            System.err.print(e);
+            return false;
+        }
+    }
+
+    @Override
+    public void Delete(String uuid) //Removes player (by UUID) from xrayers database, along with its belongings if nothing else references them
+    {
+        try (java.sql.Connection cn = dataSource.getConnection()) {
+            InTransaction(cn, () -> {
+                String hash = null;
+                try (PreparedStatement query = cn.prepareStatement(embedded ? "SELECT BelongingsHash FROM Xrayers WHERE UUID = ?" : "SELECT BelongingsHash FROM Xrayers WHERE UUID = ? FOR UPDATE")) {
+                    query.setString(1, uuid);
+                    try (ResultSet result = query.executeQuery()) {
+                        if (result.next()) hash = result.getString(1);
+                    }
+                }
+                try (PreparedStatement purge = cn.prepareStatement("DELETE FROM Xrayers WHERE UUID = ?")) {
+                    purge.setString(1, uuid);
+
+                    if (purge.executeUpdate() == 1 && hash != null) DropReference(cn, hash);
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            System.err.print(e);
+        }
+    }
+
+    @Override
+    public void DeleteAll() //Empties the Xrayers and XrayerBelongings tables, basically removing all registered xrayers
+    {
+        try (java.sql.Connection cn = dataSource.getConnection()) {
+            //Belongings last, startup sweeps whatever an interruption leaves behind:
+            try (PreparedStatement purge = cn.prepareStatement(embedded ? "DELETE FROM Xrayers" : "TRUNCATE TABLE Xrayers")) {
+                purge.executeUpdate();
+            }
+            try (PreparedStatement purge = cn.prepareStatement(embedded ? "DELETE FROM XrayerBelongings" : "TRUNCATE TABLE XrayerBelongings")) {
+                purge.executeUpdate();
+            }
+        } catch (SQLException e) {
+            System.err.print(e);
+        }
+    }
+
+    //------------------ HELPERS ------------------
+
+    private static Xrayer ReadBase(ResultSet result) throws SQLException //From the UUID, Handled, FirstHandled, Name and LastSeen columns
+    {
+        Xrayer xrayer = new Xrayer(result.getString("UUID"), result.getInt("Handled"), Xrayer.FormatTime(result.getLong("FirstHandled")), null, null);
+        xrayer.Name = result.getString("Name");
+        xrayer.LastSeen = result.getLong("LastSeen");
+        return xrayer;
+    }
+
+    private static String SortColumn(XrayerQuery.Sort sort) //Null for storage (UUID) order
+    {
+        switch (sort) {
+            case HANDLED: return "Handled";
+            case FIRST_DETECTED: return "FirstHandled";
+            case LAST_SEEN: return "LastSeen";
+            default: return null;
+        }
+    }
+
+    private static String NamePattern(String namePrefix) { return namePrefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%"; } //LIKE pattern matching the literal prefix
+
+    private interface Transaction<T> {
+        T Run() throws SQLException;
+    }
+
+    private static <T> T InTransaction(java.sql.Connection cn, Transaction<T> work) throws SQLException //Commits work, or rolls it back if it throws
+    {
+        cn.setAutoCommit(false);
+        try {
+            T result = work.Run();
+            cn.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            cn.rollback();
+            throw e;
+        } finally {
+            cn.setAutoCommit(true); //Pooled connection goes back as it came
+        }
+    }
+
+    private void AddReference(java.sql.Connection cn, String hash, byte[] data) throws SQLException //Stores belongings, or references them once more if already stored
+    {
+        try (PreparedStatement upsert = cn.prepareStatement(embedded
+                ? "INSERT INTO XrayerBelongings(Hash, RefCount, Data) VALUES(?,1,?) ON CONFLICT(Hash) DO UPDATE SET RefCount = RefCount + 1"
+                : "INSERT INTO XrayerBelongings(Hash, RefCount, Data) VALUES(?,1,?) ON DUPLICATE KEY UPDATE RefCount = RefCount + 1")) {
+            upsert.setString(1, hash);
+            upsert.setBytes(2, data);
+
+            upsert.executeUpdate();
+        }
+    }
+
+    private static void DropReference(java.sql.Connection cn, String hash) throws SQLException //Deletes belongings once nothing references them
+    {
+        try (PreparedStatement release = cn.prepareStatement("UPDATE XrayerBelongings SET RefCount = RefCount - 1 WHERE Hash = ?")) {
+            release.setString(1, hash);
+            release.executeUpdate();
+        }
+        try (PreparedStatement collect = cn.prepareStatement("DELETE FROM XrayerBelongings WHERE Hash = ? AND RefCount <= 0")) {
+            collect.setString(1, hash);
+            collect.executeUpdate();
+        }
+    }
+}
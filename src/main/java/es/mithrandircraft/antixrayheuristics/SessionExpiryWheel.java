@@ -0,0 +1,115 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Timing wheel that removes idle, unused and quit players' mining sessions. Each session is filed under the decay period
+ * it's expected to expire in, and only sessions filed under a period are looked at when that period comes. Sessions
+ * that turn out to still be in use (or were filed further away than the wheel reaches) are simply filed again.
+ */
+final class SessionExpiryWheel {
+
+    private static final int WHEEL_SLOTS = 64; //Power of two. Reach: 64 decay periods
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    //Per slot list of filed session UUIDs, as consecutive (most, least) longs:
+    private final long[][] slotUUIDs = new long[WHEEL_SLOTS][];
+    private final int[] slotSizes = new int[WHEEL_SLOTS];
+
+    private long currentTick; //Last processed decay period
+
+    //Counters:
+    private final LongAdder idleExpirations = new LongAdder(); //Sessions removed for inactivity or idle TTL
+    private final LongAdder quitExpirations = new LongAdder(); //Sessions removed because their player quit
+
+    SessionExpiryWheel(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main)
+    {
+        this.mainClassAccess = main;
+        currentTick = MiningSession.NowMillis() / MiningSession.DECAY_PERIOD_MILLIS;
+    }
+
+    /**Files a session under the period it expires in. Caller must hold the session's lock.*/
+    void Schedule(long uuidMost, long uuidLeast, MiningSession session)
+    {
+        final long expiryTime = session.ExpiryTimeMillis(mainClassAccess.GetSettings().sessionIdleTTLMillis);
+        synchronized (this) {
+            final long tick = Math.min(Math.max(expiryTime / MiningSession.DECAY_PERIOD_MILLIS, currentTick + 1), currentTick + WHEEL_SLOTS - 1);
+            session.scheduledExpiryTick = tick; //Older filings of this session become stale
+            final int slot = (int) tick & (WHEEL_SLOTS - 1);
+            long[] uuids = slotUUIDs[slot];
+            if (uuids == null) uuids = slotUUIDs[slot] = new long[16];
+            else if (slotSizes[slot] * 2 == uuids.length) uuids = slotUUIDs[slot] = Arrays.copyOf(uuids, uuids.length * 2);
+            uuids[slotSizes[slot] * 2] = uuidMost;
+            uuids[slotSizes[slot] * 2 + 1] = uuidLeast;
+            slotSizes[slot]++;
+        }
+    }
+
+    /**Drops a quit player's session after the configured grace period, unless they reconnect meanwhile*/
+    void OnQuit(long uuidMost, long uuidLeast)
+    {
+        final MiningSession session = mainClassAccess.sessions.Peek(uuidMost, uuidLeast);
+        if (session == null) return;
+        final long grace = mainClassAccess.GetSettings().sessionQuitGraceMillis;
+        synchronized (session) {
+            if (grace <= 0) {
+                if (mainClassAccess.sessions.Remove(uuidMost, uuidLeast, session)) quitExpirations.increment();
+            } else {
+                session.quitExpiryTime = MiningSession.NowMillis() + grace;
+                Schedule(uuidMost, uuidLeast, session);
+            }
+        }
+    }
+
+    /**Keeps a reconnecting player's session within its quit grace period*/
+    void OnJoin(long uuidMost, long uuidLeast)
+    {
+        final MiningSession session = mainClassAccess.sessions.Peek(uuidMost, uuidLeast);
+        if (session == null) return;
+        synchronized (session) { session.quitExpiryTime = Long.MAX_VALUE; } //Its current filing will just file it again
+    }
+
+    long GetIdleExpirations() { return idleExpirations.sum(); }
+    long GetQuitExpirations() { return quitExpirations.sum(); }
+
+    /**Processes every decay period elapsed since the last call, removing the sessions that expired*/
+    void Advance(long nowMillis)
+    {
+        final long nowTick = nowMillis / MiningSession.DECAY_PERIOD_MILLIS;
+        final AxhSettings cfg = mainClassAccess.GetSettings();
+        while (true) {
+            final long tick;
+            final long[] uuids;
+            final int size;
+            synchronized (this) { //Detach the slot, so sessions may be filed again while we go through it
+                if (currentTick >= nowTick) return;
+                tick = ++currentTick;
+                final int slot = (int) tick & (WHEEL_SLOTS - 1);
+                uuids = slotUUIDs[slot];
+                size = slotSizes[slot];
+                slotUUIDs[slot] = null;
+                slotSizes[slot] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                final long most = uuids[i * 2], least = uuids[i * 2 + 1];
+                final MiningSession session = mainClassAccess.sessions.Peek(most, least);
+                if (session == null) continue; //Already removed
+                synchronized (session) {
+                    if (session.scheduledExpiryTick != tick) continue; //Stale filing, the session was filed again elsewhere
+                    session.Decay(nowMillis, cfg.nonOreStreakDecreaseAmount);
+                    if (!session.IsExpired(nowMillis, cfg.sessionIdleTTLMillis)) Schedule(most, least, session); //Still in use
+                    else if (mainClassAccess.sessions.Remove(most, least, session)) { //Remove MiningSession for inactivity or quit
+                        if (nowMillis >= session.quitExpiryTime) quitExpirations.increment();
+                        else idleExpirations.increment();
+                    }
+                }
+            }
+        }
+    }
+}
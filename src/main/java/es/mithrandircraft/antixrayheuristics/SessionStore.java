@@ -0,0 +1,212 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * MiningSession table keyed by player UUID. The UUID is stored as its two longs in open addressing arrays, so there are
+ * no per entry nodes or UUID objects, and lookups from packed analysis records don't allocate. Split in independently
+ * locked segments so analyzer threads and the main thread rarely contend.
+ */
+final class SessionStore {
+
+    private static final int SEGMENTS = 16; //Power of two
+    private static final int SEGMENT_INITIAL_CAPACITY = 64; //Power of two
+    private static final int EVICTION_SAMPLES = 8; //Sessions compared per eviction (sampled LRU)
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    //Counters:
+    private final LongAdder hits = new LongAdder(); //Get found a session
+    private final LongAdder misses = new LongAdder(); //Get found no session
+    private final LongAdder evictions = new LongAdder(); //Sessions evicted because the store was full
+
+    SessionStore()
+    {
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment();
+    }
+
+    MiningSession Get(long uuidMost, long uuidLeast)
+    {
+        final MiningSession session = Peek(uuidMost, uuidLeast);
+        if (session != null) hits.increment();
+        else misses.increment();
+        return session;
+    }
+    MiningSession Get(UUID uuid) { return Get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()); }
+
+    /**Like Get, without counting towards hits/misses (for housekeeping lookups)*/
+    MiningSession Peek(long uuidMost, long uuidLeast)
+    {
+        final long hash = Hash(uuidMost, uuidLeast);
+        return SegmentFor(hash).Get(uuidMost, uuidLeast, hash);
+    }
+    MiningSession Peek(UUID uuid) { return Peek(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()); }
+
+    /**Stores a session unless one already exists, returning the one that ends up stored*/
+    MiningSession PutIfAbsent(long uuidMost, long uuidLeast, MiningSession session)
+    {
+        final long hash = Hash(uuidMost, uuidLeast);
+        return SegmentFor(hash).PutIfAbsent(uuidMost, uuidLeast, hash, session);
+    }
+
+    boolean Remove(long uuidMost, long uuidLeast)
+    {
+        final long hash = Hash(uuidMost, uuidLeast);
+        return SegmentFor(hash).Remove(uuidMost, uuidLeast, hash);
+    }
+    boolean Remove(UUID uuid) { return Remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()); }
+
+    /**Removes a player's session only if it still is the given one (it may have been replaced meanwhile)*/
+    boolean Remove(long uuidMost, long uuidLeast, MiningSession expected)
+    {
+        final long hash = Hash(uuidMost, uuidLeast);
+        return SegmentFor(hash).Remove(uuidMost, uuidLeast, hash, expected);
+    }
+
+    int Size()
+    {
+        int size = 0;
+        for (Segment segment : segments) size += segment.Size();
+        return size;
+    }
+
+    /**Evicts the least recently used of a few randomly sampled sessions, to make room when full*/
+    void EvictOne()
+    {
+        final int first = ThreadLocalRandom.current().nextInt(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) { //Start at a random segment, moving on if it's empty
+            if (segments[(first + i) & (SEGMENTS - 1)].EvictOne()) {
+                evictions.increment();
+                return;
+            }
+        }
+    }
+
+    long GetHits() { return hits.sum(); }
+    long GetMisses() { return misses.sum(); }
+    long GetEvictions() { return evictions.sum(); }
+
+    private Segment SegmentFor(long hash) { return segments[(int) (hash >>> 60) & (SEGMENTS - 1)]; }
+
+    private static long Hash(long uuidMost, long uuidLeast)
+    {
+        return (uuidMost ^ uuidLeast) * 0x9E3779B97F4A7C15L; //Segment from the top bits, slot from the low ones
+    }
+
+    private static int Slot(long hash, int mask) { return (int) (hash ^ (hash >>> 32)) & mask; }
+
+    private static final class Segment {
+        private long[] mosts = new long[SEGMENT_INITIAL_CAPACITY];
+        private long[] leasts = new long[SEGMENT_INITIAL_CAPACITY];
+        private MiningSession[] values = new MiningSession[SEGMENT_INITIAL_CAPACITY]; //null = empty slot
+        private int size = 0;
+
+        synchronized int Size() { return size; }
+
+        synchronized MiningSession Get(long most, long least, long hash)
+        {
+            final int slot = Find(most, least, hash);
+            return slot >= 0 ? values[slot] : null;
+        }
+
+        synchronized MiningSession PutIfAbsent(long most, long least, long hash, MiningSession session)
+        {
+            final int mask = values.length - 1;
+            int slot = Slot(hash, mask);
+            while (values[slot] != null) {
+                if (mosts[slot] == most && leasts[slot] == least) return values[slot];
+                slot = (slot + 1) & mask;
+            }
+            mosts[slot] = most;
+            leasts[slot] = least;
+            values[slot] = session;
+            if (++size * 4 > values.length * 3) Grow(); //Max load 3/4
+            return session;
+        }
+
+        synchronized boolean Remove(long most, long least, long hash)
+        {
+            final int slot = Find(most, least, hash);
+            if (slot < 0) return false;
+            RemoveAt(slot);
+            return true;
+        }
+
+        synchronized boolean Remove(long most, long least, long hash, MiningSession expected)
+        {
+            final int slot = Find(most, least, hash);
+            if (slot < 0 || values[slot] != expected) return false;
+            RemoveAt(slot);
+            return true;
+        }
+
+        synchronized boolean EvictOne()
+        {
+            if (size == 0) return false;
+            final int mask = values.length - 1;
+            int slot = ThreadLocalRandom.current().nextInt(values.length);
+            int victim = -1;
+            for (int sampled = 0; sampled < Math.min(EVICTION_SAMPLES, size); slot = (slot + 1) & mask) { //Walk from a random slot over the next used ones
+                if (values[slot] == null) continue;
+                if (victim < 0 || values[slot].lastAccessTime < values[victim].lastAccessTime) victim = slot;
+                sampled++;
+            }
+            RemoveAt(victim);
+            return true;
+        }
+
+        private int Find(long most, long least, long hash)
+        {
+            final int mask = values.length - 1;
+            int slot = Slot(hash, mask);
+            while (values[slot] != null) {
+                if (mosts[slot] == most && leasts[slot] == least) return slot;
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void RemoveAt(int slot) //Backward shift deletion, so probe sequences stay intact without tombstones
+        {
+            final int mask = values.length - 1;
+            int hole = slot;
+            int next = (slot + 1) & mask;
+            while (values[next] != null) {
+                final int home = Slot(Hash(mosts[next], leasts[next]), mask);
+                if (((next - home) & mask) >= ((next - hole) & mask)) { //Entry may move back to the hole
+                    mosts[hole] = mosts[next];
+                    leasts[hole] = leasts[next];
+                    values[hole] = values[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            values[hole] = null;
+            size--;
+        }
+
+        private void Grow()
+        {
+            final long[] oldMosts = mosts, oldLeasts = leasts;
+            final MiningSession[] oldValues = values;
+            mosts = new long[oldMosts.length << 1];
+            leasts = new long[oldLeasts.length << 1];
+            values = new MiningSession[oldValues.length << 1];
+            final int mask = values.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] == null) continue;
+                int slot = Slot(Hash(oldMosts[i], oldLeasts[i]), mask);
+                while (values[slot] != null) slot = (slot + 1) & mask;
+                mosts[slot] = oldMosts[i];
+                leasts[slot] = oldLeasts[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
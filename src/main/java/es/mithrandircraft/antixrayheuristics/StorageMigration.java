@@ -0,0 +1,243 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies every registered xrayer from one storage type to another on a background task, a page of complete records at
+ * a time in UUID order, then verifies both sides hold the same records by comparing their counts and checksums. The
+ * last copied UUID is checkpointed to "migration.yml" after every page, so running an interrupted migration again
+ * resumes where it stopped.
+ */
+final class StorageMigration {
+
+    private static final int BATCH = 256; //Xrayers copied per page
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000; //How often progress is reported
+    private static final AtomicBoolean running = new AtomicBoolean(false); //One migration at a time
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+    private final CommandSender sender;
+    private final String from;
+    private final String to;
+    private final File checkpointFile;
+
+    private StorageMigration(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main, CommandSender sender, String from, String to)
+    {
+        this.mainClassAccess = main;
+        this.sender = sender;
+        this.from = from;
+        this.to = to;
+        checkpointFile = new File(main.getDataFolder(), "migration.yml");
+    }
+
+    /**
+     * Starts migrating the registry, unless a migration is running already.
+     *
+     * @param from Source storage type (JSON, MYSQL or EMBEDDED)
+     * @param to Target storage type, another one
+     * @return False if a migration is running already
+     */
+    static boolean Start(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main, CommandSender sender, String from, String to)
+    {
+        if (!running.compareAndSet(false, true)) return false;
+        StorageMigration migration = new StorageMigration(main, sender, from, to);
+        Bukkit.getScheduler().runTaskAsynchronously(main, () -> {
+            try {
+                migration.Run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                migration.Report(ChatColor.RED + "Migration failed: " + e + ". Run it again to resume.");
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    private void Run()
+    {
+        XrayerRepository source = mainClassAccess.mm.AcquireRepository(from);
+        XrayerRepository target = mainClassAccess.mm.AcquireRepository(to);
+        try {
+            if (source == null || target == null) {
+                Report(ChatColor.RED + "Storage is still opening, run the migration again in a moment.");
+                return;
+            }
+            if (Copy(source, target)) Verify(source, target);
+        } finally {
+            mainClassAccess.mm.ReleaseRepository(source);
+            mainClassAccess.mm.ReleaseRepository(target);
+        }
+    }
+
+    private boolean Copy(XrayerRepository source, XrayerRepository target) //False if it stopped before copying everything
+    {
+        //Resume an interrupted migration between the same storages, otherwise start over on an empty target:
+        YamlConfiguration checkpoint = YamlConfiguration.loadConfiguration(checkpointFile);
+        String cursor = null;
+        long copied = 0;
+        if (from.equals(checkpoint.getString("From")) && to.equals(checkpoint.getString("To"))) {
+            cursor = checkpoint.getString("LastUUID");
+            copied = checkpoint.getLong("Copied");
+            Report(ChatColor.AQUA + "Resuming the migration from " + from + " to " + to + " after " + ChatColor.YELLOW + copied + ChatColor.AQUA + " xrayers.");
+        }
+        else {
+            int stored = target.Count(XrayerQuery.ALL);
+            if (stored != 0) {
+                Report(ChatColor.RED + (stored < 0 ? "Unable to read " + to + " storage." : to + " storage isn't empty (" + stored + " xrayers), not migrating into it."));
+                return false;
+            }
+            Report(ChatColor.AQUA + "Migrating xrayers from " + from + " to " + to + "...");
+        }
+
+        final int total = source.Count(XrayerQuery.ALL);
+        final long started = System.nanoTime();
+        long copiedNow = 0; //This run, for throughput
+        long lastReport = System.currentTimeMillis();
+        while (true) {
+            if (!mainClassAccess.isEnabled()) return false; //Server stopping, the checkpoint lets it resume
+            List<Xrayer> page = source.GetFullPage(cursor, BATCH);
+            if (page == null) {
+                Report(ChatColor.RED + "Unable to read from " + from + " storage. Run the migration again to resume.");
+                return false;
+            }
+            if (page.isEmpty()) break;
+            if (!target.PutAll(page)) {
+                Report(ChatColor.RED + "Unable to write to " + to + " storage. Run the migration again to resume.");
+                return false;
+            }
+            target.Sync(); //Durable before the checkpoint moves past it
+
+            cursor = page.get(page.size() - 1).UUID;
+            copied += page.size();
+            copiedNow += page.size();
+            SaveCheckpoint(cursor, copied);
+
+            if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL_MILLIS) {
+                lastReport = System.currentTimeMillis();
+                Report(ChatColor.AQUA + "Migrated " + ChatColor.YELLOW + copied + ChatColor.AQUA + "/" + ChatColor.YELLOW + total + ChatColor.AQUA + " xrayers ("
+                        + ChatColor.YELLOW + PerSecond(copiedNow, started) + ChatColor.AQUA + "/s).");
+            }
+        }
+        Report(ChatColor.AQUA + "Copied " + ChatColor.YELLOW + copiedNow + ChatColor.AQUA + " xrayers in " + ChatColor.YELLOW + Seconds(started) + ChatColor.AQUA + "s ("
+                + ChatColor.YELLOW + PerSecond(copiedNow, started) + ChatColor.AQUA + "/s), verifying...");
+        return true;
+    }
+
+    private void Verify(XrayerRepository source, XrayerRepository target) //Compares both storages' counts and checksums
+    {
+        final long started = System.nanoTime();
+        Checksum expected = Checksum(source);
+        Checksum actual = Checksum(target);
+        if (expected == null || actual == null) {
+            Report(ChatColor.RED + "Unable to read the storages for verification. Run the migration again to retry it.");
+            return;
+        }
+        if (expected.count != actual.count || !expected.digest.equals(actual.digest)) {
+            //Checkpoint kept, running it again copies anything stored past it and verifies again:
+            Report(ChatColor.RED + "Verification failed: " + from + " has " + expected.count + " xrayers (checksum " + expected.digest.substring(0, 16) + "), "
+                    + to + " has " + actual.count + " (checksum " + actual.digest.substring(0, 16) + "). Detections stored during the migration also cause this.");
+            return;
+        }
+        if (!checkpointFile.delete() && checkpointFile.exists()) System.err.print("[AntiXrayHeuristics] Unable to delete " + checkpointFile + ".");
+        Report(ChatColor.AQUA + "Migration verified in " + ChatColor.YELLOW + Seconds(started) + ChatColor.AQUA + "s: " + ChatColor.YELLOW + actual.count + ChatColor.AQUA
+                + " xrayers, checksum " + ChatColor.YELLOW + actual.digest.substring(0, 16) + ChatColor.AQUA + ". Set StorageType to " + to + " and restart to use it.");
+    }
+
+    //------------------ HELPERS ------------------
+
+    private static final class Checksum {
+        final long count;
+        final String digest;
+
+        Checksum(long count, String digest)
+        {
+            this.count = count;
+            this.digest = digest;
+        }
+    }
+
+    private static Checksum Checksum(XrayerRepository repository) //SHA-256 over every field of every record, in UUID order. Null on failure.
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable.", e); //Every Java platform has it
+        }
+        long count = 0;
+        String cursor = null;
+        while (true) {
+            List<Xrayer> page = repository.GetFullPage(cursor, BATCH);
+            if (page == null) return null;
+            if (page.isEmpty()) break;
+            for (Xrayer xrayer : page) {
+                Update(digest, xrayer.UUID.getBytes(StandardCharsets.UTF_8));
+                Update(digest, Integer.toString(xrayer.Handled).getBytes(StandardCharsets.UTF_8));
+                //Normalized, SQL storage keeps handle times as epoch millis (unreadable ones turn into "?"):
+                Update(digest, Xrayer.FormatTime(Xrayer.ParseTime(xrayer.FirstHandleTime)).getBytes(StandardCharsets.UTF_8));
+                Update(digest, xrayer.HandleLocation != null ? xrayer.HandleLocation.getBytes(StandardCharsets.UTF_8) : null);
+                Update(digest, xrayer.Belongings);
+                Update(digest, xrayer.Name != null ? xrayer.Name.getBytes(StandardCharsets.UTF_8) : null);
+                Update(digest, Long.toString(xrayer.LastSeen).getBytes(StandardCharsets.UTF_8));
+            }
+            count += page.size();
+            cursor = page.get(page.size() - 1).UUID;
+        }
+        return new Checksum(count, BelongingsCodec.Hex(digest.digest()));
+    }
+
+    private static void Update(MessageDigest digest, byte[] field) //Length prefixed, so field boundaries can't shift
+    {
+        int length = field != null ? field.length : -1;
+        digest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+        if (field != null) digest.update(field);
+    }
+
+    private void SaveCheckpoint(String lastUUID, long copied)
+    {
+        YamlConfiguration checkpoint = new YamlConfiguration();
+        checkpoint.set("From", from);
+        checkpoint.set("To", to);
+        checkpoint.set("LastUUID", lastUUID);
+        checkpoint.set("Copied", copied);
+        try {
+            checkpoint.save(checkpointFile);
+        } catch (IOException e) {
+            System.err.print(e); //Resuming would copy some xrayers again, which is harmless
+        }
+    }
+
+    private static long PerSecond(long amount, long startedNanos)
+    {
+        long elapsed = System.nanoTime() - startedNanos;
+        return elapsed > 0 ? amount * 1000000000L / elapsed : amount;
+    }
+
+    private static String Seconds(long startedNanos) { return String.format("%.1f", (System.nanoTime() - startedNanos) / 1e9); }
+
+    private void Report(String message) //Sends progress to whoever started the migration, on the main thread
+    {
+        final String prefixed = ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + message;
+        try {
+            Bukkit.getScheduler().runTask(mainClassAccess, () -> sender.sendMessage(prefixed));
+        } catch (IllegalPluginAccessException e) { //Disabling, log it instead
+            System.out.println(ChatColor.stripColor(prefixed));
+        }
+    }
+}
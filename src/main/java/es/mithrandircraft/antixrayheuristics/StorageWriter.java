@@ -0,0 +1,185 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single writer thread storing detections. Detections are queued (bounded, never blocking the caller) and written in
+ * batches of whatever is queued, in one repository call. Repeated detections of the same xrayer within a batch are
+ * merged into a single "Handled += n" write, while each detection still gets its own callback with its handle number.
+ */
+class StorageWriter {
+
+    private static final int MAX_BATCH = 256; //Detections written together at most
+    private static final long IDLE_POLL_MILLIS = 100; //How often an idle writer checks if it was stopped
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+    private final XrayerRepository repository;
+
+    private final ArrayBlockingQueue<Detection> queue;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Runnable> undelivered = new ConcurrentLinkedQueue<>(); //Callbacks of writes done while the plugin is disabling
+
+    private volatile boolean accepting = true; //Detections are held from the start, until Start once storage is open
+    private volatile boolean running = false;
+
+    private final LongAdder accepted = new LongAdder(); //Detections queued
+    private final LongAdder dropped = new LongAdder(); //Detections rejected because the queue was full
+    private final LongAdder written = new LongAdder(); //Detections stored
+    private final LongAdder batches = new LongAdder(); //Repository writes
+    private final AtomicBoolean overflowing = new AtomicBoolean(false); //Logs drops once per overflow instead of once per detection
+
+    private static final class Detection {
+        final String uuid;
+        final Supplier<Xrayer> newXrayer;
+        final StorePlayerDataCallback callback;
+
+        Detection(String uuid, Supplier<Xrayer> newXrayer, StorePlayerDataCallback callback)
+        {
+            this.uuid = uuid;
+            this.newXrayer = newXrayer;
+            this.callback = callback;
+        }
+    }
+
+    StorageWriter(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main, XrayerRepository repository, int queueSize)
+    {
+        this.mainClassAccess = main;
+        this.repository = repository;
+        queue = new ArrayBlockingQueue<>(Math.max(16, queueSize));
+        thread = new Thread(this::Run, "AntiXrayHeuristics Storage Writer");
+        thread.setDaemon(true);
+    }
+
+    /**Starts the writer thread*/
+    void Start()
+    {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops accepting detections and waits for the writer to store everything queued. Must be called from the main
+     * thread: callbacks that couldn't be scheduled anymore (plugin disabling) run right here.
+     */
+    void Shutdown()
+    {
+        accepting = false;
+        running = false;
+        try {
+            thread.join(30000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Runnable callbacks;
+        while ((callbacks = undelivered.poll()) != null) callbacks.run();
+    }
+
+    /**
+     * Queues a detection for storing, also before the writer starts. Never blocks: if the queue is full the detection
+     * is dropped and counted.
+     *
+     * @param newXrayer Builds the xrayer to store (handled once) if it isn't registered yet. Runs on the writer thread, so it only gets to data copied beforehand.
+     * @param callback Notified on the main thread with the detection's handle number, may be null
+     */
+    boolean Offer(String uuid, Supplier<Xrayer> newXrayer, StorePlayerDataCallback callback)
+    {
+        if (!accepting) return false;
+        if (queue.offer(new Detection(uuid, newXrayer, callback))) {
+            accepted.increment();
+            if (overflowing.get()) overflowing.set(false);
+            return true;
+        }
+        dropped.increment();
+        if (overflowing.compareAndSet(false, true)) System.out.println("[AntiXrayHeuristics] Storage writer queue is full, detections won't be stored until it drains (see /axh stats for how many were dropped).");
+        return false;
+    }
+
+    //Counters:
+    int GetQueueSize() { return queue.size(); }
+    int GetQueueCapacity() { return queue.size() + queue.remainingCapacity(); }
+    long GetAccepted() { return accepted.sum(); }
+    long GetDropped() { return dropped.sum(); }
+    long GetWritten() { return written.sum(); }
+    long GetBatches() { return batches.sum(); }
+
+    private void Run()
+    {
+        List<Detection> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                Detection first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!running && queue.isEmpty()) return; //Stopped and fully drained
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                Write(batch);
+            } catch (InterruptedException e) {
+                if (!running && queue.isEmpty()) return;
+            } catch (RuntimeException e) { //Never let one bad batch kill the writer
+                e.printStackTrace();
+            }
+            batch.clear();
+        }
+    }
+
+    private void Write(List<Detection> batch)
+    {
+        //Merge detections of the same xrayer, keeping their order:
+        LinkedHashMap<String, List<Detection>> byXrayer = new LinkedHashMap<>();
+        for (Detection detection : batch) byXrayer.computeIfAbsent(detection.uuid, uuid -> new ArrayList<>(1)).add(detection);
+
+        List<String> uuids = new ArrayList<>(byXrayer.size());
+        int[] handles = new int[byXrayer.size()];
+        List<Supplier<Xrayer>> newXrayers = new ArrayList<>(byXrayer.size());
+        for (Map.Entry<String, List<Detection>> xrayer : byXrayer.entrySet()) {
+            handles[uuids.size()] = xrayer.getValue().size();
+            uuids.add(xrayer.getKey());
+            newXrayers.add(xrayer.getValue().get(0).newXrayer); //First detection's snapshot of the player
+        }
+
+        final int[] totals = repository.StoreHandles(uuids, handles, newXrayers);
+        batches.increment();
+
+        //Each detection's handle number: the merged ones count up to the stored total
+        final List<Runnable> callbacks = new ArrayList<>();
+        int i = 0;
+        for (List<Detection> detections : byXrayer.values()) {
+            final int total = totals[i++];
+            if (total < 0) continue; //Failed, reported by the repository
+            written.add(detections.size());
+            for (int j = 0; j < detections.size(); j++) {
+                final StorePlayerDataCallback callback = detections.get(j).callback;
+                final int handleTimes = total - detections.size() + 1 + j;
+                if (callback != null) callbacks.add(() -> callback.onInsertDone(handleTimes));
+            }
+        }
+        if (callbacks.isEmpty()) return;
+
+        final Runnable delivery = () -> {
+            for (Runnable callback : callbacks) callback.run();
+        };
+        try {
+            Bukkit.getScheduler().runTask(mainClassAccess, delivery); //Callback to main thread returns the handle numbers
+        } catch (IllegalPluginAccessException e) { //Disabling, tasks can't be scheduled anymore: Shutdown runs them
+            undelivered.add(delivery);
+        }
+    }
+}
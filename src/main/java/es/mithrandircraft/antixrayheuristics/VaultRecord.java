@@ -0,0 +1,42 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.UUID;
+
+/**
+ * An xrayer as shown in the vault: its stored data (UUID as two longs, times handled, first handle time as epoch
+ * millis), its name and last seen time, and references to its head and rendered GUI entry.
+ */
+final class VaultRecord {
+
+    final long uuidMost;
+    final long uuidLeast;
+    final int handledAmount;
+    final long firstHandledMillis; //-1 if the stored time couldn't be read
+
+    String name; //As stored, or resolved off the main thread if never stored. Null if the server never saw the player.
+    long lastPlayed;
+    ItemStack skull; //Shared head instance, null when heads aren't used
+    ItemStack entry; //Rendered GUI entry
+
+    VaultRecord(Xrayer xrayer)
+    {
+        UUID uuid = UUID.fromString(xrayer.UUID);
+        uuidMost = uuid.getMostSignificantBits();
+        uuidLeast = uuid.getLeastSignificantBits();
+        handledAmount = xrayer.Handled;
+        firstHandledMillis = Xrayer.ParseTime(xrayer.FirstHandleTime);
+        name = xrayer.Name;
+        lastPlayed = xrayer.LastSeen;
+    }
+
+    UUID GetUUID() { return new UUID(uuidMost, uuidLeast); }
+
+    /**First handle time as shown in the vault*/
+    String GetFirstHandledTime() { return Xrayer.FormatTime(firstHandledMillis); }
+}
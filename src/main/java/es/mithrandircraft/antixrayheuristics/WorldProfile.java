@@ -0,0 +1,60 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**Everything the block listeners need to know about a world, resolved once when the world loads (or on reload)*/
+final class WorldProfile {
+
+    static final WorldProfile UNTRACKED = new WorldProfile(false, Integer.MIN_VALUE, null, Collections.emptySet(), null);
+
+    final boolean tracked; //World is in "TrackWorlds" and is an overworld or nether environment
+    final int maxY; //Mined blocks at or above this altitude are ignored
+    final OreRule[] oreRules; //Material.ordinal() indexed block rules for this world
+    final Set<Material> explosives; //Placed blocks that count as explosive assisted mining in this world
+    final BiomeClassCache biomeClasses; //Loaded chunks' biome classes, for ores with biome reducers
+
+    private WorldProfile(boolean tracked, int maxY, OreRule[] oreRules, Set<Material> explosives, BiomeClassCache biomeClasses)
+    {
+        this.tracked = tracked;
+        this.maxY = maxY;
+        this.oreRules = oreRules;
+        this.explosives = explosives;
+        this.biomeClasses = biomeClasses;
+    }
+
+    /**Builds the profile for a world from the current settings snapshot*/
+    static WorldProfile Build(World world, AxhSettings settings, SpigotVersion spigotVersion)
+    {
+        if (!settings.trackWorlds.contains(world.getName())) return UNTRACKED;
+
+        //Only consider if it's a normal overworld or nether environment:
+        switch (world.getEnvironment()) {
+            case NORMAL: {
+                Set<Material> explosives = EnumSet.of(Material.TNT, Material.END_CRYSTAL);
+                if (spigotVersion.version.GetValue() >= 116) explosives.add(Material.RESPAWN_ANCHOR); //Spigot for MC 1.16+
+                return new WorldProfile(true, settings.ignoreHigherThanOverworldAltitude, settings.oreRules, explosives,
+                        new BiomeClassCache(settings.goldRichBiomes, settings.emeraldRichBiomes));
+            }
+            case NETHER: {
+                Set<Material> explosives = EnumSet.of(Material.TNT, Material.END_CRYSTAL,
+                        Material.WHITE_BED, Material.BLACK_BED, Material.GRAY_BED, Material.LIGHT_GRAY_BED,
+                        Material.BLUE_BED, Material.CYAN_BED, Material.LIGHT_BLUE_BED, Material.YELLOW_BED,
+                        Material.GREEN_BED, Material.LIME_BED, Material.ORANGE_BED, Material.RED_BED,
+                        Material.BROWN_BED, Material.PURPLE_BED, Material.PINK_BED, Material.MAGENTA_BED);
+                return new WorldProfile(true, settings.ignoreHigherThanNetherAltitude, settings.oreRules, explosives,
+                        new BiomeClassCache(settings.goldRichBiomes, settings.emeraldRichBiomes));
+            }
+            default:
+                return UNTRACKED;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.UUID;
+
+/**WorldProfile cache keyed by world UUID. Kept up to date by world load/unload events and rebuilt on reload.*/
+class WorldProfiles {
+
+    private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
+
+    private final HashMap<UUID, WorldProfile> profiles = new HashMap<>();
+
+    WorldProfiles(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main) { this.mainClassAccess = main; }
+
+    /**Returns the profile for a world, UNTRACKED if it isn't known*/
+    WorldProfile Get(World world)
+    {
+        WorldProfile profile = profiles.get(world.getUID());
+        return profile != null ? profile : WorldProfile.UNTRACKED;
+    }
+
+    /**Builds and caches the profile of a newly loaded world*/
+    void Load(World world)
+    {
+        profiles.put(world.getUID(), WorldProfile.Build(world, mainClassAccess.GetSettings(), mainClassAccess.spigotVersion));
+    }
+
+    /**Forgets an unloaded world*/
+    void Unload(World world)
+    {
+        profiles.remove(world.getUID());
+    }
+
+    /**Rebuilds the profiles of every loaded world from the current settings snapshot*/
+    void Rebuild()
+    {
+        profiles.clear();
+        for (World world : Bukkit.getWorlds()) Load(world);
+    }
+}
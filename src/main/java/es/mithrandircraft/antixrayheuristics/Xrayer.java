@@ -4,19 +4,44 @@
 
 package es.mithrandircraft.antixrayheuristics;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
 class Xrayer {
 
+    //Format handle times are written with (JSON storage) and shown in, in the server's time zone:
+    static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
     public String UUID;
     public int Handled;
     public String FirstHandleTime;
     public String HandleLocation;
-    public String Belongings;
+    public byte[] Belongings; //Encoded by BelongingsCodec
+    public String Name; //Last known player name, null if unknown
+    public long LastSeen; //Epoch millis the player was last seen at, 0 if unknown
 
-    public Xrayer(String uuid, int handled, String firsthandletime, String handlelocation, String belongings) {
+    public Xrayer(String uuid, int handled, String firsthandletime, String handlelocation, byte[] belongings) {
         UUID = uuid;
         Handled = handled;
         FirstHandleTime = firsthandletime;
         HandleLocation = handlelocation;
         Belongings = belongings;
     }
+
+    /**Epoch millis of a handle time, -1 if it can't be read*/
+    static long ParseTime(String time)
+    {
+        if (time == null) return -1;
+        try {
+            return LocalDateTime.parse(time, TIME_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**Handle time of epoch millis, "?" if unknown (negative)*/
+    static String FormatTime(long epochMillis) { return epochMillis >= 0 ? TIME_FORMAT.format(Instant.ofEpochMilli(epochMillis)) : "?"; }
 }
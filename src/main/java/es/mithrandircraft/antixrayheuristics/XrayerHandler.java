@@ -45,14 +45,11 @@ class XrayerHandler {
                 }
 
                 //Store xrayer's data (and inventory only if configured):
-                Bukkit.getScheduler().runTaskAsynchronously(mainClass, () -> mainClass.mm.StorePlayerData(player, new StorePlayerDataCallback() {
+                mainClass.mm.StorePlayerData(player, new StorePlayerDataCallback() { //Queued for the storage writer
                     @Override
                     public void onInsertDone(int handleTimes) {
                         //The following are better occurring AFTER xrayer data storing is done asynchronously, that's why they're in this callback:
 
-                        //Add xrayer head to the vault's xrayerSkull List
-                        if(mainClass.getConfig().getBoolean("UseHeadsInGUI")) mainClass.vault.AddXrayerHeadToCache(player.getUniqueId());
-
                         //Remove all of the xrayer's belongings if configured:
                         if (mainClass.getConfig().getBoolean("ClensePlayerItems")) {
                             try {
@@ -75,11 +72,11 @@ class XrayerHandler {
                             }
                         }
                     }
-                }));
+                });
 
                 //Delete xrayer mining session if configured:
                 if (mainClass.getConfig().getBoolean("NullifySuspicionAferPunish")) {
-                    mainClass.sessions.remove(player.getName());
+                    mainClass.sessions.Remove(player.getUniqueId());
                 }
 
                 //Console message:
@@ -97,26 +94,7 @@ class XrayerHandler {
     public static void AddDummyXrayer()
     {
         AntiXrayHeuristics mainClass = JavaPlugin.getPlugin(AntiXrayHeuristics.class);
-        Bukkit.getScheduler().runTaskAsynchronously(mainClass, () -> mainClass.mm.StoreDummyPlayerData(new StorePlayerDataCallback() {
-            @Override
-            public void onInsertDone(int handleTimes) {
-                //Add dummy xrayer head to the vault's xrayerSkull List
-                if(mainClass.getConfig().getBoolean("UseHeadsInGUI"))
-                {
-                    /*
-                    //There is an extremely rare chance that the random UUID may already be cache'd, so we might as well account for it, since we want a fresh new head for every dummy
-                    String nonRepeatingRandomUUID;
-                    do{
-                        nonRepeatingRandomUUID = UUID.randomUUID().toString();
-                    }
-                    while (mainClass.vault.GetUUIDs().contains(nonRepeatingRandomUUID));
-                    */
-
-                    //WARNING: The same head will be generated always
-                    mainClass.vault.AddDummyXrayerHeadToCache();
-                }
-            }
-        }));
+        mainClass.mm.StoreDummyPlayerData(null); //Nothing to do once stored, the vault fetches heads for the pages it loads
     }
 
     private static void DropItemAtPlayerLocation(ItemStack item, Player p) //Drops items at player location
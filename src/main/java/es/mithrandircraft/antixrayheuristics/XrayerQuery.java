@@ -0,0 +1,78 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * How the vault lists registered xrayers: a sort order, and optionally only xrayers whose name starts with a prefix
+ * (case insensitive). Key sorts go by descending key (most handled, latest detected, latest seen first), ties by
+ * descending UUID, so every order is total and pages can be read with keyset cursors.
+ */
+final class XrayerQuery {
+
+    enum Sort {
+        STORAGE, //Ascending UUID
+        HANDLED,
+        FIRST_DETECTED,
+        LAST_SEEN;
+
+        /**Sort the vault's sort button switches to after this one*/
+        Sort Next() { return values()[(ordinal() + 1) % values().length]; }
+
+        /**Sort by its command argument name (storage, handled, firstdetected, lastseen), null if there's none*/
+        static Sort FromArgument(String argument)
+        {
+            for (Sort sort : values()) if (sort.name().replace("_", "").equalsIgnoreCase(argument)) return sort;
+            return null;
+        }
+    }
+
+    static final XrayerQuery ALL = new XrayerQuery(Sort.STORAGE, null);
+
+    final Sort sort;
+    final String namePrefix; //Lowercase, null to list every xrayer
+
+    XrayerQuery(Sort sort, String namePrefix)
+    {
+        this.sort = sort;
+        this.namePrefix = namePrefix != null && !namePrefix.isEmpty() ? namePrefix.toLowerCase(Locale.ROOT) : null;
+    }
+
+    XrayerQuery WithSort(Sort sort) { return new XrayerQuery(sort, namePrefix); }
+
+    XrayerQuery WithNamePrefix(String namePrefix) { return new XrayerQuery(sort, namePrefix); }
+
+    /**True if a player name could be searched for (Minecraft names only have letters, digits and underscores)*/
+    static boolean IsValidNamePrefix(String namePrefix) { return namePrefix.matches("[A-Za-z0-9_]{1,16}"); }
+
+    /**True if the xrayer's name passes the filter*/
+    boolean Matches(String name) { return namePrefix == null || (name != null && name.toLowerCase(Locale.ROOT).startsWith(namePrefix)); }
+
+    /**Value an xrayer is sorted by (sorts other than STORAGE)*/
+    long SortKey(Xrayer xrayer)
+    {
+        switch (sort) {
+            case HANDLED: return xrayer.Handled;
+            case FIRST_DETECTED: return Xrayer.ParseTime(xrayer.FirstHandleTime);
+            case LAST_SEEN: return xrayer.LastSeen;
+            default: return 0;
+        }
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof XrayerQuery)) return false;
+        return sort == ((XrayerQuery) other).sort && Objects.equals(namePrefix, ((XrayerQuery) other).namePrefix);
+    }
+
+    @Override
+    public int hashCode() { return Objects.hash(sort, namePrefix); }
+
+    @Override
+    public String toString() { return sort + (namePrefix != null ? ":" + namePrefix : ""); }
+}
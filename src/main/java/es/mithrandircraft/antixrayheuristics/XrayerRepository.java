@@ -0,0 +1,90 @@
+//--------------------------------------------------------------------
+// Copyright © Dylan Calaf Latham 2019-2021 AntiXrayHeuristics
+//--------------------------------------------------------------------
+
+package es.mithrandircraft.antixrayheuristics;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Persistent xrayer registry. Implementations are blocking and meant to be called from async tasks. Storage errors are
+ * reported and turn into "no result" (null, or -1 for handle counts), like the rest of the plugin's persistence does.
+ */
+interface XrayerRepository {
+
+    /**Prepares the storage (loads files, opens connection pools, creates tables...)*/
+    void Open();
+
+    /**Flushes and releases the storage*/
+    void Close();
+
+    /**
+     * Adds handles to several xrayers in a single write (one transaction, or one journal pass), storing the ones that
+     * aren't registered yet.
+     *
+     * @param uuids Xrayers, each one at most once
+     * @param handles Handles to add to each xrayer
+     * @param newXrayers Build each xrayer to store (handled once), only called if it may be needed
+     * @return Times each xrayer has been handled, these handles included, or -1 entries on failure (also for an xrayer
+     *         whose record couldn't be built, which doesn't fail the others)
+     */
+    int[] StoreHandles(List<String> uuids, int[] handles, List<Supplier<Xrayer>> newXrayers);
+
+    /**
+     * A page of registered xrayers' base data (UUID, Handled, FirstHandleTime, Name and LastSeen, no belongings), listed
+     * as the query sorts and filters them.
+     *
+     * @param after Keyset cursor: the page starts after this xrayer (last one of the previous page), null to start from the first one
+     * @param limit Max xrayers in the page
+     * @return The page, null on failure
+     */
+    List<Xrayer> GetBasePage(XrayerQuery query, Xrayer after, int limit);
+
+    /**Amount of registered xrayers the query lists, -1 on failure*/
+    int Count(XrayerQuery query);
+
+    /**
+     * Records an xrayer's current name and when it was last seen.
+     *
+     * @return False if it isn't registered, or on failure
+     */
+    boolean UpdatePlayer(String uuid, String name, long lastSeen);
+
+    /**
+     * A page of registered xrayers' complete records (handle location and belongings included), by ascending UUID.
+     *
+     * @param afterUUID Keyset cursor: the page starts after this UUID, null to start from the first one
+     * @param limit Max xrayers in the page
+     * @return The page, null on failure
+     */
+    List<Xrayer> GetFullPage(String afterUUID, int limit);
+
+    /**
+     * Stores complete records as they are, replacing any xrayer already stored with the same UUID (used by migrations,
+     * so copying a page again is harmless).
+     *
+     * @return True if all of them were stored
+     */
+    boolean PutAll(List<Xrayer> xrayers);
+
+    /**Makes every write done so far durable*/
+    void Sync();
+
+    /**An xrayer's encoded belongings, null if there are none, it isn't registered, or on failure*/
+    byte[] GetBelongings(String uuid);
+
+    /**
+     * Swaps an xrayer's stored belongings, only if they still are the expected ones (used to migrate their encoding).
+     *
+     * @return True if they were swapped
+     */
+    boolean ReplaceBelongings(String uuid, byte[] expected, byte[] replacement);
+
+    /**An xrayer's serialized handle location, null if it isn't registered or on failure*/
+    String GetHandleLocation(String uuid);
+
+    void Delete(String uuid);
+
+    void DeleteAll();
+}
@@ -8,28 +8,134 @@ import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.HumanEntity;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.Inventory;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.ItemMeta;
-import org.bukkit.inventory.meta.SkullMeta;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 class XrayerVault
 {
     private final es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics mainClassAccess;
 
-    //The following 4 list's values are parallel, and represent xrayer information. The first 3 are usually filled from
-    //persistent memory, while the last one is filled by querying heads
-    private final ArrayList<String> UUIDs = new ArrayList<>();
-    private final ArrayList<Integer> handledAmounts = new ArrayList<>();
-    private final ArrayList<String> firstHandledTimes = new ArrayList<>();
+    private static final int PAGE_SIZE = 45; //Xrayer entries per page
+    private static final int MAX_RENDERED_ENTRIES = 1024; //Rendered entries kept across page loads
 
-    private final List<ItemStack> xrayerSkulls = new ArrayList<>();
+    //A loaded vault page: its xrayer records in display (query) order, indexed by UUID, and the inventory all its viewers share
+    private static final class VaultPage
+    {
+        final ArrayList<VaultRecord> records = new ArrayList<>(PAGE_SIZE);
+        final HashMap<UUID, Integer> index = new HashMap<>(); //Record position by UUID
+        boolean hasNext; //There are more xrayers after this page
+        Xrayer last; //Last xrayer as loaded, where the next page starts after
+        boolean stale; //Loaded before a refresh, reloaded when opened again (still shown meanwhile)
+
+        Inventory gui; //Shared by every viewer of the page, null until first opened
+        String title; //Title gui was created with
+        final ItemStack[] shown = new ItemStack[54]; //Item instances set in gui by slot, so only changed slots are set again
+
+        void Add(VaultRecord record)
+        {
+            index.put(record.GetUUID(), records.size());
+            records.add(record);
+        }
+
+        /**Position of an xrayer's record, -1 if it isn't in this page*/
+        int IndexOf(UUID uuid)
+        {
+            Integer position = index.get(uuid);
+            return position != null ? position : -1;
+        }
+
+        /**Removes an xrayer's record, moving up the ones after it (a page holds 45 at most). Null if it isn't in this page.*/
+        VaultRecord Remove(UUID uuid)
+        {
+            Integer position = index.remove(uuid);
+            if (position == null) return null;
+            VaultRecord removed = records.remove((int) position);
+            for (int i = position; i < records.size(); i++) index.put(records.get(i).GetUUID(), i);
+            return removed;
+        }
+
+        /**Removes every record, the page then shows no xrayers and no next page*/
+        void Clear()
+        {
+            records.clear();
+            index.clear();
+            hasNext = false;
+            last = null;
+            stale = false;
+        }
+
+        /**Takes over the shared inventory of the page this one reloads, so its viewers keep it open*/
+        void TakeInventory(VaultPage reloaded)
+        {
+            gui = reloaded.gui;
+            title = reloaded.title;
+            System.arraycopy(reloaded.shown, 0, shown, 0, shown.length);
+            reloaded.gui = null;
+        }
+
+        /**Sets a slot of the shared inventory, only if it shows a different item (one slot update for its viewers)*/
+        void SetSlot(int slot, ItemStack item)
+        {
+            if (shown[slot] == item) return;
+            shown[slot] = item;
+            gui.setItem(slot, item);
+        }
+    }
+
+    //A rendered GUI entry, along with the data it was rendered from, so it's only rendered again once that data changes
+    private static final class RenderedEntry
+    {
+        final int handledAmount;
+        final long firstHandledMillis;
+        final String name;
+        final long lastPlayed;
+        final ItemStack skull; //Null for stone entries
+        final ItemStack item;
+
+        RenderedEntry(VaultRecord record, ItemStack item)
+        {
+            handledAmount = record.handledAmount;
+            firstHandledMillis = record.firstHandledMillis;
+            name = record.name;
+            lastPlayed = record.lastPlayed;
+            skull = record.skull;
+            this.item = item;
+        }
+
+        boolean RenderedFrom(VaultRecord record)
+        {
+            return handledAmount == record.handledAmount && firstHandledMillis == record.firstHandledMillis && Objects.equals(name, record.name) && lastPlayed == record.lastPlayed && skull == record.skull;
+        }
+    }
+
+    private final LinkedHashMap<UUID, RenderedEntry> renderedEntries = new LinkedHashMap<UUID, RenderedEntry>(16, 0.75f, true) { //By UUID, least recently used dropped first
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, RenderedEntry> eldest) { return size() > MAX_RENDERED_ENTRIES; }
+    };
+
+    //The vault as listed by one query (sort and name filter): its loaded pages, where they start, and its query buttons
+    private static final class VaultView
+    {
+        final XrayerQuery query;
+        final HashMap<Integer, VaultPage> loadedPages = new HashMap<>(); //Loaded pages by page number
+        final ArrayList<Xrayer> pageCursors = new ArrayList<>(); //Xrayer each page starts after (null for page 0), known up to the furthest page reached
+        final HashSet<Integer> prefetchingPages = new HashSet<>(); //Pages being loaded in the background
+        int totalXrayers; //Xrayers the query lists, as of the last page load
+        int pages; //How many pages the view should have
+        ItemStack sortButton; //Showing the query, null until rendered
+        ItemStack searchButton;
+
+        VaultView(XrayerQuery query) { this.query = query; }
+    }
 
-    private int pages; //How many pages the vault should have
+    private final HashMap<XrayerQuery, VaultView> views = new HashMap<>(); //Views someone is looking at, by query
+    private int dataVersion = 0; //Bumped when loaded pages are dropped, so loads still in flight don't install stale pages
+    private final HashSet<UUID> removedXrayers = new HashSet<>(); //Removed since the last drop, left out of pages still loading
 
     private String GUITitle;
 
@@ -43,17 +149,14 @@ class XrayerVault
     public final ItemStack backButton;
     public final ItemStack purgePlayerButton;
     public final ItemStack absolvePlayerButton;
+    public final ItemStack sortButton; //Named after the query by each view
+    public final ItemStack searchButton;
 
     public String GetGUITitle()
     {
         return GUITitle;
     }
 
-    public List<String> GetUUIDs()
-    {
-        return UUIDs;
-    }
-
     public XrayerVault(es.mithrandircraft.antixrayheuristics.AntiXrayHeuristics main)
     {
         this.mainClassAccess = main;
@@ -70,6 +173,8 @@ class XrayerVault
             backButton = new ItemStack(Material.GREEN_STAINED_GLASS_PANE);
             purgePlayerButton = new ItemStack(Material.RED_STAINED_GLASS_PANE);
             absolvePlayerButton = new ItemStack(Material.YELLOW_STAINED_GLASS_PANE);
+            sortButton = new ItemStack(Material.MAGENTA_STAINED_GLASS_PANE);
+            searchButton = new ItemStack(Material.MAGENTA_STAINED_GLASS_PANE);
         }
         else
         {
@@ -81,6 +186,8 @@ class XrayerVault
             backButton = new ItemStack(Material.valueOf("STAINED_GLASS_PANE"),1, (short) 13);
             purgePlayerButton = new ItemStack(Material.valueOf("STAINED_GLASS_PANE"),1, (short) 14);
             absolvePlayerButton = new ItemStack(Material.valueOf("STAINED_GLASS_PANE"),1, (short) 4);
+            sortButton = new ItemStack(Material.valueOf("STAINED_GLASS_PANE"),1, (short) 2);
+            searchButton = new ItemStack(Material.valueOf("STAINED_GLASS_PANE"),1, (short) 2);
         }
 
         ItemMeta separator_meta = separator.getItemMeta();
@@ -120,21 +227,20 @@ class XrayerVault
         absolvePlayerButton.setItemMeta(absolveplayer_meta);
     }
 
-    /**Removes all xrayer data from both memory and xrayer vault, and refreshes vault after which sending everyone back to page 0 for safety*/
+    /**Removes all xrayer data from both memory and xrayer vault, and empties the vault's pages, sending viewers of any page past 0 back to it*/
     public void PurgeAllXrayersAndRefreshVault()
     {
-        //Dump registered xrayers:
-        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.DeleteRegisteredXrayers());
-        //Refresh, just clear the vault lists since we did a global purge, and set pages to 1:
-        ClearXrayerInfoLists(true);
-        SetPages(1);
-        //Send viewers back to page 0:
-        SendAllToPageZero();
+        //Dump registered xrayers, then empty the vault for its viewers:
+        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> {
+            mainClassAccess.mm.DeleteRegisteredXrayers();
+            Bukkit.getScheduler().runTask(mainClassAccess, this::EmptyVault);
+        });
     }
 
     /**
      * Can clear the inspected xrayer that solicitor name is watching (or explicitly defined if nameIsSolicitor = false) from both
-     * persistent data storage and data loaded in RAM for vault, and refresh vault, sending all viewers back to page 0 for safety
+     * persistent data storage and data loaded in RAM for vault. Only the pages showing the xrayer change for their viewers,
+     * and whoever was inspecting the xrayer is sent back to their page
      *
      * @param name The name of the player to be cleared from xrayer data
      * @param nameIsSolicitor The method needs to know if the player requesting the data removal is also the one who's data should be removed
@@ -144,233 +250,418 @@ class XrayerVault
         final String xrayerUUID;
         if(nameIsSolicitor) //Inputted name is the solicitor viewing xrayer through gui. We can get the xrayer's name since it's stored in this same vault
         {
-            //Purge player from memory:
             xrayerUUID = GetInspectedXrayer(name);
-            Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.DeleteXrayer(xrayerUUID));
-            //Remove absolved uuid from being listed in vault:
-            RemoveXrayerDataByUUIDFromList(xrayerUUID);
         }
         else //Should be the actual specific xrayer's name
         {
-            //Purge player from memory:
             xrayerUUID = Bukkit.getServer().getPlayer(name).getUniqueId().toString();
-            Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.DeleteXrayer(xrayerUUID));
-            //Remove absolved uuid from being listed in vault:
-            RemoveXrayerDataByUUIDFromList(xrayerUUID);
         }
-        //Recalculate pages length:
-        CalculatePages();
-        //Send viewers back to page 0:
-        SendAllToPageZero();
+        //Purge player from memory, then take it out of the vault's loaded pages:
+        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> {
+            mainClassAccess.mm.DeleteXrayer(xrayerUUID);
+            Bukkit.getScheduler().runTask(mainClassAccess, () -> RemoveFromVault(xrayerUUID));
+        });
     }
 
-    /**Clears 3 of the data arrays and fills them with input data*/
-    public void SubstituteXrayerInfoLists(List<String> uuids, List<Integer> handledamounts, List<String> firsthandledtimes)
+    /**
+     * Takes a removed xrayer out of the loaded pages listing it. Entries after it move up a slot in those pages' shared
+     * inventories, other pages and their viewers are left alone. Whoever was inspecting the xrayer goes back to their page.
+     */
+    private void RemoveFromVault(String xrayerUUID)
     {
-        //Clear previous data:
-        ClearXrayerInfoLists(false);
+        final UUID uuid = UUID.fromString(xrayerUUID);
+        removedXrayers.add(uuid); //Pages loading meanwhile may still list it
+        for (VaultView view : views.values())
+        {
+            for (Map.Entry<Integer, VaultPage> loaded : view.loadedPages.entrySet())
+            {
+                if (loaded.getValue().Remove(uuid) == null) continue; //Page cursors are keys, so the pages after this one don't shift
+                view.totalXrayers--;
+                CalculatePages(view);
+                if (loaded.getValue().gui != null) ShowPage(view, loaded.getKey(), loaded.getValue());
+            }
+        }
 
-        //Update with new data:
-        UUIDs.addAll(uuids);
-        handledAmounts.addAll(handledamounts);
-        firstHandledTimes.addAll(firsthandledtimes);
+        for (Map.Entry<String, PlayerViewInfo> viewer : new ArrayList<>(viewers.entrySet()))
+        {
+            Player player = Bukkit.getServer().getPlayer(viewer.getKey());
+            if (!xrayerUUID.equals(viewer.getValue().xrayerInvUUID) || player == null) continue;
+            OpenVault(player, viewer.getValue().page);
+            player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("InspectedXrayerRemoved")));
+        }
+    }
+
+    /**
+     * Empties every view after all xrayers were purged, keeping the shared inventories of their first pages. Viewers of
+     * any other page, or inspecting an xrayer, are sent back to page 0.
+     */
+    private void EmptyVault()
+    {
+        dataVersion++; //Loads still in flight read purged xrayers
+        removedXrayers.clear();
+        for (VaultView view : views.values())
+        {
+            final VaultPage first = view.loadedPages.get(0);
+            view.loadedPages.clear();
+            view.prefetchingPages.clear();
+            view.pageCursors.clear();
+            view.pageCursors.add(null);
+            view.totalXrayers = 0;
+            CalculatePages(view);
+            if (first == null) continue;
+            first.Clear();
+            view.loadedPages.put(0, first);
+            if (first.gui != null) ShowPage(view, 0, first);
+        }
+
+        for (Map.Entry<String, PlayerViewInfo> viewer : new ArrayList<>(viewers.entrySet()))
+        {
+            Player player = Bukkit.getServer().getPlayer(viewer.getKey());
+            if ((viewer.getValue().page == 0 && viewer.getValue().xrayerInvUUID == null) || player == null) continue; //Page 0 viewers see it empty out
+            OpenVault(player, 0);
+            player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("ForcedPageZero")));
+        }
     }
 
-    /**Updates Xrayer information arrays through "SubstituteXayerInfoLists" and also forces page open for player if not null*/
+    /**Reloads the page player is on from persistent memory and forces it open for player, as the vault is listed for them*/
     public void UpdateXrayerInfoLists(Player player, int page)
     {
-        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.GetAllBaseXrayerData(new CallbackGetAllBaseXrayerData() {
-            @Override
-            public void onQueryDone() {
-                OpenVault(player, page);
-                player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("VaultRefreshed")));
-            }
-        })); //This single async function fills up 3 xrayer info lists from persistent memory.
+        UpdateXrayerInfoLists(player, page, GetQuery(player.getName()));
     }
 
-    /**
-     * Clears persistent memory related xrayer information arraylists
-     *
-     * @param clearHeadCache true = also clear the vault's xrayer head caché
-     */
-    public void ClearXrayerInfoLists(boolean clearHeadCache)
+    /**Reloads a page of the vault as listed by a query from persistent memory and forces it open for player*/
+    public void UpdateXrayerInfoLists(Player player, int page, XrayerQuery query)
     {
-        UUIDs.clear();
-        handledAmounts.clear();
-        firstHandledTimes.clear();
-        if(mainClassAccess.getConfig().getBoolean("UseHeadsInGUI") && clearHeadCache) xrayerSkulls.clear();
+        DropLoadedPages(); //Page cursors stay valid, so we can reload the same page directly (into the inventory its viewers have open)
+        final VaultView view = View(query);
+        final int reloadPage = page < view.pageCursors.size() ? page : 0;
+        LoadPage(view, reloadPage, () -> {
+            OpenVault(player, reloadPage, query);
+            player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("VaultRefreshed")));
+        });
     }
 
-    /**Calculates pages considering the amount of registered xrayer uuid's, and that there can only be 45 results per page*/
-    private void CalculatePages()
+    /**Clears all xrayer information loaded from persistent memory (pages, their inventories, heads and page cursors of every view)*/
+    public void ClearXrayerInfoLists()
     {
-        pages = MathFunctions.Cut(45, UUIDs.size());
+        DropLoadedPages();
+        views.clear();
     }
 
-    /**Sends all vault viewers back to page 0*/
-    private void SendAllToPageZero()
+    /**Drops rendered entries and buttons (and the loaded pages holding them), so they're rendered again with reloaded locale texts*/
+    public void ForgetRenderedEntries()
     {
-        for(Map.Entry<String, PlayerViewInfo> entry : viewers.entrySet())
+        renderedEntries.clear();
+        for (VaultView view : views.values())
         {
-            OpenVault(Bukkit.getServer().getPlayer(entry.getKey()) ,0);
-            Bukkit.getServer().getPlayer(entry.getKey()).sendMessage(ChatColor.translateAlternateColorCodes('&',LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("ForcedPageZero")));
+            view.sortButton = null;
+            view.searchButton = null;
         }
+        DropLoadedPages();
+    }
+
+    private void DropLoadedPages() //Loaded pages are kept (and shown) as stale, each is reloaded into its inventory once opened again
+    {
+        for (VaultView view : views.values())
+        {
+            for (VaultPage vaultPage : view.loadedPages.values()) vaultPage.stale = true;
+            view.prefetchingPages.clear();
+        }
+        removedXrayers.clear();
+        dataVersion++;
+    }
+
+    private VaultView View(XrayerQuery query) { return views.computeIfAbsent(query, VaultView::new); }
+
+    private void DropUnviewed(XrayerQuery query) //Forgets a view nobody looks at anymore
+    {
+        for (PlayerViewInfo info : viewers.values()) if (info.query.equals(query)) return;
+        views.remove(query);
+    }
+
+    /**Calculates pages considering the amount of xrayers a view lists, and that there can only be 45 results per page*/
+    private static void CalculatePages(VaultView view)
+    {
+        view.pages = MathFunctions.Cut(PAGE_SIZE, view.totalXrayers);
     }
 
     /**
-     *Opens xrayer vault for player in a specified vault display page (player head index with info about the xrayers)
-     *is often also used for switching pages and forcing viewers towards viewing a certain page
+     * Loads a page (45 entries + 1 to know if there's a next one) from persistent memory past its cursor, along with the
+     * xrayer count, resolves the xrayers' names and last played times off the main thread, fetches its heads if configured,
+     * renders its entries and stores it as loaded, updating the inventory of the page it reloads (if any). Then runs
+     * onLoaded on the main thread.
+     * Only called for pages with a known cursor (page 0, or pages right after an already loaded one).
+     */
+    private void LoadPage(VaultView view, int page, Runnable onLoaded)
+    {
+        final Xrayer cursor = view.pageCursors.isEmpty() ? null : view.pageCursors.get(page);
+        final int version = dataVersion;
+        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.GetBaseXrayerPage(view.query, cursor, PAGE_SIZE + 1, new CallbackGetXrayerPage() {
+            @Override
+            public void onQueryDone(List<Xrayer> xrayers, int total) {
+                VaultPage vaultPage = new VaultPage();
+                for (int i = 0; i < xrayers.size() && i < PAGE_SIZE; i++)
+                {
+                    vaultPage.Add(new VaultRecord(xrayers.get(i)));
+                }
+                vaultPage.hasNext = xrayers.size() > PAGE_SIZE;
+                if (!xrayers.isEmpty()) vaultPage.last = xrayers.get(vaultPage.records.size() - 1);
+
+                Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> {
+                    ResolvePlayers(vaultPage);
+                    Bukkit.getScheduler().runTask(mainClassAccess, () -> InstallPage(view, page, vaultPage, total, version, onLoaded));
+                });
+            }
+        }));
+    }
+
+    private void InstallPage(VaultView view, int page, VaultPage vaultPage, int total, int version, Runnable onLoaded)
+    {
+        view.prefetchingPages.remove(page);
+        if(version != dataVersion) return; //Dropped while loading
+        for (UUID removed : removedXrayers) vaultPage.Remove(removed); //Removed while loading
+        if(view.pageCursors.isEmpty()) view.pageCursors.add(null);
+        if(mainClassAccess.getConfig().getBoolean("UseHeadsInGUI")) UpdateXrayerHeadCache(view, page, vaultPage);
+        for (VaultRecord record : vaultPage.records) record.entry = RenderEntry(record);
+        final VaultPage reloaded = view.loadedPages.put(page, vaultPage);
+        view.totalXrayers = total;
+        CalculatePages(view);
+        if(reloaded != null && reloaded.gui != null) //Its viewers only get the slots that changed
+        {
+            vaultPage.TakeInventory(reloaded);
+            ShowPage(view, page, vaultPage);
+        }
+
+        //Remember where the next page starts:
+        if(vaultPage.hasNext && view.pageCursors.size() == page + 1) view.pageCursors.add(vaultPage.last);
+
+        if(onLoaded != null) onLoaded.run();
+    }
+
+    /**Loads the next page in the background if it isn't loaded, so moving to it doesn't wait on persistent memory*/
+    private void PrefetchPage(VaultView view, int page)
+    {
+        final VaultPage loaded = view.loadedPages.get(page);
+        if(page >= view.pageCursors.size() || (loaded != null && !loaded.stale) || !view.prefetchingPages.add(page)) return;
+        LoadPage(view, page, null);
+    }
+
+    /**
+     *Opens xrayer vault for player in a specified vault display page (player head index with info about the xrayers),
+     *listed as it is for them. Is often also used for switching pages and forcing viewers towards viewing a certain page
      *
      * @param player The player the vault will open for
      * @param page What page the player will view
      */
     public void OpenVault(Player player, int page)
     {
-        //Recalculate pages length:
-        CalculatePages();
+        OpenVault(player, page, GetQuery(player.getName()));
+    }
 
-        Inventory gui = Bukkit.createInventory(null, 54, GUITitle + (page+1) + "/" + pages);
-        viewers.put(player.getName(), new PlayerViewInfo(page)); //Register player as gui viewer on a certain page (used as player-page reference)
+    /**
+     *Opens xrayer vault for player in a specified vault display page, listed by a query (sort and name filter)
+     *
+     * @param player The player the vault will open for
+     * @param page What page the player will view
+     * @param query How the vault is listed for the player from now on
+     */
+    public void OpenVault(Player player, int page, XrayerQuery query)
+    {
+        final VaultView view = View(query);
+        if(page >= Math.max(1, view.pageCursors.size())) page = 0; //Unknown page start, should never happen when moving page by page
+        final int openPage = page;
 
-        if(mainClassAccess.getConfig().getBoolean("UseHeadsInGUI"))
-        {
-            if(!xrayerSkulls.isEmpty()) //Head caché has entries: Only construct the vault and then display it to the player
-            {
-                ConstructVault(gui, page);
-                player.openInventory(gui);
-            }
-            else //Head caché doesn't have entries: Cache the xrayer heads + construct the vault and display it to the player
-            {
-                Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> UpdateXrayerHeadCache(new CallbackUpdateXrayerHeadCache() {
-                    @Override
-                    public void onFetchUpdateDone() {
-                        ConstructVault(gui, page);
-                        player.openInventory(gui);
-                    }
-                }));
-            }
-        }
-        else
+        PlayerViewInfo previous = viewers.put(player.getName(), new PlayerViewInfo(openPage, query)); //Register player as gui viewer on a certain page (used as player-page reference)
+        if(previous != null && !previous.query.equals(query)) DropUnviewed(previous.query);
+
+        VaultPage vaultPage = view.loadedPages.get(openPage);
+        if(vaultPage == null || vaultPage.stale) //Page not loaded (or loaded before a refresh): load it, then display it to the player
         {
-            ConstructVault(gui, page);
-            player.openInventory(gui);
+            LoadPage(view, openPage, () -> {
+                VaultPage loaded = view.loadedPages.get(openPage);
+                if(loaded != null && !loaded.stale) OpenVault(player, openPage, query);
+            });
+            return;
         }
+
+        Inventory gui = ShowPage(view, openPage, vaultPage);
+        if(player.getOpenInventory().getTopInventory() != gui) player.openInventory(gui); //Already open when refreshing the page
+
+        if(vaultPage.hasNext) PrefetchPage(view, openPage + 1);
     }
 
-    /**Fills up vault gui with xrayer heads from cache*/
-    private void ConstructVault(Inventory gui, int page)
+    /**Lists the vault for player by the next sort, from page 0*/
+    public void CycleSort(Player player)
     {
-        UUID currentUUID;
-        int iteration = 0;
-        ListIterator<String> iter = UUIDs.listIterator(page * 45);
+        XrayerQuery query = GetQuery(player.getName());
+        OpenVault(player, 0, query.WithSort(query.sort.Next()));
+    }
 
-        if(mainClassAccess.getConfig().getBoolean("UseHeadsInGUI")) //Fills up the vault page with skull entries containing xrayer data
+    /**Lists the vault for player without name filter, or tells them how to search if there's none*/
+    public void ClearSearch(Player player)
+    {
+        XrayerQuery query = GetQuery(player.getName());
+        if(query.namePrefix != null) OpenVault(player, 0, query.WithNamePrefix(null));
+        else player.sendMessage(ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("MessagesPrefix")) + " " + ChatColor.translateAlternateColorCodes('&', LocaleManager.get().getString("VaultSearchHelp")));
+    }
+
+    /**
+     * Shows a loaded page in the inventory all its viewers share, creating it when first shown. A title can't change
+     * once an inventory is open, so a page whose page count changed gets a new inventory its viewers are moved to.
+     */
+    private Inventory ShowPage(VaultView view, int page, VaultPage vaultPage)
+    {
+        final String title = GUITitle + (page+1) + "/" + view.pages;
+        final Inventory outdated = vaultPage.gui;
+        if(outdated == null || !title.equals(vaultPage.title))
         {
-            ItemStack head;
-            while (iter.hasNext() && !(iteration >= 45))
-            {
-                currentUUID = UUID.fromString(iter.next());
-                head = xrayerSkulls.get(iteration);
-                SkullMeta meta = (SkullMeta) head.getItemMeta();
-                meta.setDisplayName(Bukkit.getServer().getOfflinePlayer(currentUUID).getName()); //Head name editing
-                Date lastSeenDate = new Date(Bukkit.getServer().getOfflinePlayer(currentUUID).getLastPlayed()); //Getting the last played date as Date object, and then formatting it...
-                DateFormat df = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-                meta.setLore(PlaceholderManager.SubstituteXrayerDataAndColorCodePlaceholders(LocaleManager.get().getStringList("EntryDesc"), String.valueOf(handledAmounts.get(iteration)), firstHandledTimes.get(iteration), df.format(lastSeenDate))); //Head lore editing
-                head.setItemMeta(meta);
-                gui.setItem(iteration, head);
-                iteration++;
-            }
+            vaultPage.gui = Bukkit.createInventory(null, 54, title);
+            vaultPage.title = title;
+            Arrays.fill(vaultPage.shown, null);
         }
-        else
+        ConstructVault(view, page, vaultPage);
+
+        if(outdated != null && outdated != vaultPage.gui)
         {
-            ItemStack stone = new ItemStack(Material.STONE);
-            while (iter.hasNext() && !(iteration >= 45)) //Fills up the vault page with stone entries containing xrayer data
-            {
-                currentUUID = UUID.fromString(iter.next());
-                ItemMeta meta = stone.getItemMeta();
-                meta.setDisplayName(Bukkit.getServer().getOfflinePlayer(currentUUID).getName()); //Stone name editing
-                Date lastSeenDate = new Date(Bukkit.getServer().getOfflinePlayer(currentUUID).getLastPlayed()); //Getting the last played date as Date object, and then formatting it...
-                DateFormat df = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-                meta.setLore(PlaceholderManager.SubstituteXrayerDataAndColorCodePlaceholders(LocaleManager.get().getStringList("EntryDesc"), String.valueOf(handledAmounts.get(iteration)), firstHandledTimes.get(iteration), df.format(lastSeenDate))); //Head lore editing
-                stone.setItemMeta(meta);
-                gui.setItem(iteration, stone);
-                iteration++;
-            }
+            for(HumanEntity viewer : new ArrayList<>(outdated.getViewers())) viewer.openInventory(vaultPage.gui);
+        }
+        return vaultPage.gui;
+    }
+
+    /**Fills up a page's shared inventory with its xrayer entries and buttons, setting only the slots that changed*/
+    private void ConstructVault(VaultView view, int page, VaultPage vaultPage)
+    {
+        //Fills up the vault page with its rendered (skull or stone) entries containing xrayer data, emptying slots left over:
+        for (int iteration = 0; iteration < PAGE_SIZE; iteration++)
+        {
+            vaultPage.SetSlot(iteration, iteration < vaultPage.records.size() ? vaultPage.records.get(iteration).entry : null);
         }
 
         //Lower section separators:
-        gui.setItem(46, separator);
-        gui.setItem(47, separator);
-        gui.setItem(49, separator);
-        gui.setItem(51, separator);
-        gui.setItem(52, separator);
+        vaultPage.SetSlot(47, separator);
+        vaultPage.SetSlot(49, separator);
+        vaultPage.SetSlot(51, separator);
+
+        //Query buttons, showing how the view lists xrayers:
+        if(view.sortButton == null) RenderQueryButtons(view);
+        vaultPage.SetSlot(46, view.sortButton);
+        vaultPage.SetSlot(52, view.searchButton);
 
         //Lower section vault/gui stuff:
-        if(page + 1 < pages) gui.setItem(53, nextButton); else gui.setItem(53, separator);
-        if(page - 1 > -1) gui.setItem(45, prevButton); else gui.setItem(45, separator);
-        gui.setItem(48, purgeButton);
-        gui.setItem(50, refreshButton);
+        vaultPage.SetSlot(53, vaultPage.hasNext ? nextButton : separator);
+        vaultPage.SetSlot(45, page - 1 > -1 ? prevButton : separator);
+        vaultPage.SetSlot(48, purgeButton);
+        vaultPage.SetSlot(50, refreshButton);
+    }
+
+    private void RenderQueryButtons(VaultView view)
+    {
+        final String sortMode = LocaleManager.get().getString(SortModeKey(view.query.sort));
+        final String nameFilter = view.query.namePrefix != null ? view.query.namePrefix + "*" : LocaleManager.get().getString("SearchButtonNoFilter");
+
+        view.sortButton = sortButton.clone();
+        ItemMeta sort_meta = view.sortButton.getItemMeta();
+        sort_meta.setDisplayName(PlaceholderManager.SubstituteVaultQueryAndColorCodePlaceholders(LocaleManager.get().getString("SortButtonTitle"), sortMode, nameFilter));
+        sort_meta.setLore(PlaceholderManager.SubstituteColorCodePlaceholders(LocaleManager.get().getStringList("SortButtonDesc")));
+        view.sortButton.setItemMeta(sort_meta);
+
+        view.searchButton = searchButton.clone();
+        ItemMeta search_meta = view.searchButton.getItemMeta();
+        search_meta.setDisplayName(PlaceholderManager.SubstituteVaultQueryAndColorCodePlaceholders(LocaleManager.get().getString("SearchButtonTitle"), sortMode, nameFilter));
+        search_meta.setLore(PlaceholderManager.SubstituteColorCodePlaceholders(LocaleManager.get().getStringList("SearchButtonDesc")));
+        view.searchButton.setItemMeta(search_meta);
+    }
+
+    private static String SortModeKey(XrayerQuery.Sort sort) //Locale entry naming a sort
+    {
+        switch (sort) {
+            case HANDLED: return "SortModeHandled";
+            case FIRST_DETECTED: return "SortModeFirstDetected";
+            case LAST_SEEN: return "SortModeLastSeen";
+            default: return "SortModeStorage";
+        }
     }
 
     /**
-     * Updates the xrayer head cache
-     * This method is meant to be executed asynchronously
-     * In principle, this method will work better if executed only once on first vault open, due to it being prone to errors
-     * if heads are fetched for the same player in low periods of time
+     * Resolves the names and last played times of a page's xrayers stored without a name (by older versions, until the
+     * background backfill gets to them). Meant to run off the main thread, lookups may hit the disk.
      */
-    private void UpdateXrayerHeadCache(final CallbackUpdateXrayerHeadCache callback)
+    private static void ResolvePlayers(VaultPage vaultPage)
     {
-        UUID currentUUID;
-        //Fills up the xrayerSkulls list with xrayer skulls
-        for (String uuid : UUIDs) {
-            currentUUID = UUID.fromString(uuid);
-            xrayerSkulls.add(HeadManager.GetPlayerHead(currentUUID, null));
+        for (VaultRecord record : vaultPage.records)
+        {
+            if (record.name != null) continue;
+            OfflinePlayer player = Bukkit.getServer().getOfflinePlayer(record.GetUUID());
+            record.name = player.getName();
+            record.lastPlayed = player.getLastPlayed();
         }
+    }
 
-        //Callback to main thread runs synchronous instructions at the end of the asynchronous instructions
-        Bukkit.getScheduler().runTask(mainClassAccess, new Runnable() {
-            @Override
-            public void run() {
-                callback.onFetchUpdateDone();
-            }
-        });
+    /**GUI entry of a loaded page's xrayer (skull if configured, else stone), rendered again only if its data changed*/
+    private ItemStack RenderEntry(VaultRecord record)
+    {
+        final UUID uuid = record.GetUUID();
+        RenderedEntry rendered = renderedEntries.get(uuid);
+        if(rendered != null && rendered.RenderedFrom(record)) return rendered.item;
+
+        ItemStack item = RenderItem(record, "EntryDesc");
+        renderedEntries.put(uuid, new RenderedEntry(record, item));
+        return item;
     }
 
-    /**Adds a single corresponding xrayer head to the xrayerSkulls cache list by xrayerName if not already listed*/
-    public void AddXrayerHeadToCache(UUID xrayerUUID)
+    /**Skull (copy) or stone named after the xrayer, with the locale's description of its data as lore*/
+    private static ItemStack RenderItem(VaultRecord record, String descriptionKey)
     {
-        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> HeadManager.GetPlayerHead(xrayerUUID, new CallbackAddXrayerHeadToCache() {
-            @Override
-            public void onFetchUpdateDone(ItemStack xrayerSkull) {
-                if(!xrayerSkulls.contains(xrayerSkull)){
-                    xrayerSkulls.add(xrayerSkull);
+        ItemStack item = record.skull != null ? record.skull.clone() : new ItemStack(Material.STONE);
+        ItemMeta meta = item.getItemMeta();
+        meta.setDisplayName(record.name); //Name editing
+        meta.setLore(PlaceholderManager.SubstituteXrayerDataAndColorCodePlaceholders(LocaleManager.get().getStringList(descriptionKey), String.valueOf(record.handledAmount), record.GetFirstHandledTime(), Xrayer.FormatTime(record.lastPlayed))); //Lore editing
+        item.setItemMeta(meta);
+        return item;
+    }
+
+    /**
+     * Gives a page's xrayer records their heads right away, cached ones or placeholders. Heads fetched afterwards replace
+     * their placeholder, in the record and in the page's shared inventory.
+     */
+    private void UpdateXrayerHeadCache(VaultView view, int page, VaultPage vaultPage)
+    {
+        for (VaultRecord record : vaultPage.records) {
+            record.skull = mainClassAccess.heads.GetPlayerHead(record.GetUUID(), new CallbackAddXrayerHeadToCache() {
+                @Override
+                public void onFetchUpdateDone(ItemStack xrayerSkull) {
+                    AddXrayerHeadToCache(view, page, vaultPage, record, xrayerSkull);
                 }
-            }
-        }));
+            });
+        }
     }
-    /**Adds a dummy xrayer head to the xrayerSkulls cache. The dummy head will be Notch's head*/
-    public void AddDummyXrayerHeadToCache()
+
+    private void AddXrayerHeadToCache(VaultView view, int page, VaultPage vaultPage, VaultRecord record, ItemStack xrayerSkull)
     {
-        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> HeadManager.GetPlayerHead(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), new CallbackAddXrayerHeadToCache() {
-            @Override
-            public void onFetchUpdateDone(ItemStack xrayerSkull) {
-                //No repeated head check since all dummy heads are generated with Notch's UUID, hence the head will repeat if this method is called more than once
-                xrayerSkulls.add(xrayerSkull);
-            }
-        }));
+        record.skull = xrayerSkull; //Set on the record itself, fetches finishing in any order can't mix heads up
+        final int entry = vaultPage.IndexOf(record.GetUUID());
+        if(entry < 0 || view.loadedPages.get(page) != vaultPage) return; //Removed or dropped since, viewers see newer data
+        record.entry = RenderEntry(record);
+        if(vaultPage.gui != null) vaultPage.SetSlot(entry, record.entry); //Every viewer of the page sees it
     }
 
     /**
-     *Opens an xrayer's confiscated inventory information and actions by xrayer UUID ArrayList index
+     *Opens an xrayer's confiscated inventory information and actions by vault entry index
      *
      * @param player player for which the xrayer's vault (xrayer's confiscated inventory, information and actions) GUI window will open
-     * @param xrayerUUIDIndex the xrayer's index in the UUID ArrayList. This is actually the same value as the xrayer head position in the main GUI with the xrayer heads
+     * @param xrayerUUIDIndex the xrayer's index across vault pages (page * 45 + slot of the xrayer head in the main GUI)
      */
     public void OpenXrayerConfiscatedInventory(Player player, int xrayerUUIDIndex)
     {
-        viewers.get(player.getName()).xrayerInvUUID = UUIDs.get(xrayerUUIDIndex); //Update uuid of the xrayer we're watching
+        final VaultPage vaultPage = View(GetQuery(player.getName())).loadedPages.get(xrayerUUIDIndex / PAGE_SIZE);
+        final int entry = xrayerUUIDIndex % PAGE_SIZE; //Position within the page
+        if(vaultPage == null || entry >= vaultPage.records.size()) return;
+        final VaultRecord record = vaultPage.records.get(entry);
+        final String xrayerUUID = record.GetUUID().toString();
+
+        viewers.get(player.getName()).xrayerInvUUID = xrayerUUID; //Update uuid of the xrayer we're watching
 
-        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.GetXrayerBelongings(UUIDs.get(xrayerUUIDIndex), new CallbackGetXrayerBelongings()
+        Bukkit.getScheduler().runTaskAsynchronously(mainClassAccess, () -> mainClassAccess.mm.GetXrayerBelongings(xrayerUUID, new CallbackGetXrayerBelongings()
         {
             @Override
             public void onQueryDone(ItemStack[] belongings)
@@ -399,28 +690,8 @@ class XrayerVault
                 inv.setItem(51, purgePlayerButton);
                 inv.setItem(53, absolvePlayerButton);
 
-                if(mainClassAccess.getConfig().getBoolean("UseHeadsInGUI"))
-                {
-                    ItemStack head = xrayerSkulls.get(xrayerUUIDIndex);
-                    SkullMeta meta = (SkullMeta) head.getItemMeta();
-                    meta.setDisplayName(Bukkit.getServer().getOfflinePlayer(UUID.fromString(UUIDs.get(xrayerUUIDIndex))).getName()); //Head name editing
-                    Date lastSeenDate = new Date(Bukkit.getServer().getOfflinePlayer(UUID.fromString(UUIDs.get(xrayerUUIDIndex))).getLastPlayed()); //Getting the last played date as Date object, and then formatting it...
-                    DateFormat df = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-                    meta.setLore(PlaceholderManager.SubstituteXrayerDataAndColorCodePlaceholders(LocaleManager.get().getStringList("EntryDescInspector"), String.valueOf(handledAmounts.get(xrayerUUIDIndex)), firstHandledTimes.get(xrayerUUIDIndex), df.format(lastSeenDate))); //Head lore editing
-                    head.setItemMeta(meta);
-                    inv.setItem(49, head);
-                }
-                else
-                {
-                    ItemStack stone = new ItemStack(Material.STONE);
-                    ItemMeta meta = stone.getItemMeta();
-                    meta.setDisplayName(Bukkit.getServer().getOfflinePlayer(UUID.fromString(UUIDs.get(xrayerUUIDIndex))).getName()); //Head name editing
-                    Date lastSeenDate = new Date(Bukkit.getServer().getOfflinePlayer(UUID.fromString(UUIDs.get(xrayerUUIDIndex))).getLastPlayed()); //Getting the last played date as Date object, and then formatting it...
-                    DateFormat df = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-                    meta.setLore(PlaceholderManager.SubstituteXrayerDataAndColorCodePlaceholders(LocaleManager.get().getStringList("EntryDescInspector"), String.valueOf(handledAmounts.get(xrayerUUIDIndex)), firstHandledTimes.get(xrayerUUIDIndex), df.format(lastSeenDate))); //Head lore editing
-                    stone.setItemMeta(meta);
-                    inv.setItem(49, stone);
-                }
+                //Xrayer's skull (or stone) with its data, names and last played times already resolved by the page load:
+                inv.setItem(49, RenderItem(record, "EntryDescInspector"));
 
                 player.openInventory(inv);
             }
@@ -444,30 +715,23 @@ class XrayerVault
     /**Returns page the viewing player is on*/
     public int GetPage(String player) { return viewers.get(player).page; }
 
+    /**Returns how the vault is listed for the viewing player (storage order for non viewers)*/
+    public XrayerQuery GetQuery(String player)
+    {
+        PlayerViewInfo info = viewers.get(player);
+        return info != null ? info.query : XrayerQuery.ALL;
+    }
+
     /**Returns the uuid of the original owner of the inventory player is inspecting (if any)*/
     public String GetInspectedXrayer(String playerName) { return viewers.get(playerName).xrayerInvUUID; }
 
-    /**Removes all xrayer data in xrayer vault (the 4 lists) by uuid*/
-    private void RemoveXrayerDataByUUIDFromList(String xrayerUUID)
+    /**Removes a player and it's data from the viewers hashmap*/
+    public void RemovePlayerAsViewer(String playerName)
     {
-        //Check if uuid exists:
-        for (int i = 0; i < UUIDs.size(); i++) if(UUIDs.get(i).equals(xrayerUUID)) {
-            //All xrayer data is in the same index, so we can use this index to delete all xrayer data in all parallel array lists
-            UUIDs.remove(i);
-            handledAmounts.remove(i);
-            firstHandledTimes.remove(i);
-
-            if(mainClassAccess.getConfig().getBoolean("UseHeadsInGUI")) xrayerSkulls.remove(i);
-            break;
-        }
+        PlayerViewInfo info = viewers.remove(playerName);
+        if(info != null) DropUnviewed(info.query);
     }
 
-    /**Removes a player and it's data from the viewers hashmap*/
-    public void RemovePlayerAsViewer(String playerName) { viewers.remove(playerName); }
-
     /**Returns true if the viewers HashMap is empty, else false*/
     public boolean CheckIfNoViewers(){ return viewers.isEmpty(); }
-
-    /**Forcefully sets how many pages the vault has*/
-    private void SetPages(int howManyPages) { pages = howManyPages; }
 }
\ No newline at end of file